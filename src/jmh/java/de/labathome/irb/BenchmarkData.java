@@ -0,0 +1,86 @@
+/* irb
+ * BenchmarkData Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Input data shared by the benchmarks: the bundled test resources and synthetic frames.
+ */
+class BenchmarkData {
+
+	/** 640x480 uncompressed snapshot from the test resources */
+	static final String RESOURCE = "de/labathome/irb/140114AA/AA011400.irb";
+
+	/** name of the frame size parameter value that selects the test resource */
+	static final String RESOURCE_SIZE = "resource";
+
+	private BenchmarkData() { }
+
+	/**
+	 * @param name name of the resource on the classpath
+	 * @return contents of the resource as a little-endian heap buffer
+	 * @throws IOException if the resource cannot be read
+	 */
+	static ByteBuffer resource(String name) throws IOException {
+		try {
+			final byte[] contents = Files.readAllBytes(Paths.get(BenchmarkData.class.getClassLoader().getResource(name).toURI()));
+			return ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the IrbImage block of the resource snapshot, positioned at 0
+	 * @throws IOException if the resource cannot be read
+	 */
+	static ByteBuffer resourceImage() throws IOException {
+		ByteBuffer file = resource(RESOURCE);
+		IrbFile irb = IrbFile.read(file.duplicate().order(ByteOrder.LITTLE_ENDIAN), false);
+		for (IrbHeaderBlock block : irb.headerBlocks) {
+			if (block.blockType == IrbBlockType.IMAGE) {
+				file.position((int) block.offset);
+				file.limit((int) (block.offset + block.size));
+				return file.slice().order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		throw new RuntimeException("no IMAGE block in " + RESOURCE);
+	}
+
+	/**
+	 * @param size            {@link #RESOURCE_SIZE} or frame size as {@code <width>x<height>}
+	 * @param compressionType compression type of synthetic frames; the resource is uncompressed
+	 * @return IrbImage block, positioned at 0
+	 * @throws IOException if the resource cannot be read
+	 */
+	static ByteBuffer image(String size, int compressionType) throws IOException {
+		ByteBuffer resourceImage = resourceImage();
+		if (RESOURCE_SIZE.equals(size)) {
+			return resourceImage;
+		}
+		final String[] widthHeight = size.split("x");
+		IrbImage template = IrbImage.fromBuffer(resourceImage, 0, resourceImage.limit(), true);
+		return new IrbGenerator(IrbFileType.VARIOCAM, Integer.parseInt(widthHeight[0]), Integer.parseInt(widthHeight[1]), compressionType)
+				.palette(template.palette)
+				.image(0);
+	}
+
+	/**
+	 * @param size {@link #RESOURCE_SIZE} or frame size as {@code <width>x<height>}
+	 * @return decoded uncompressed image
+	 * @throws IOException if the resource cannot be read
+	 */
+	static IrbImage decodedImage(String size) throws IOException {
+		ByteBuffer buf = image(size, 0);
+		return IrbImage.fromBuffer(buf, 0, buf.limit(), false);
+	}
+}
@@ -0,0 +1,58 @@
+/* irb
+ * ColormapBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.hoefel.ArrayToPNG;
+import eu.hoefel.ReferenceArrayToPNG;
+
+/**
+ * Rendering of an image with a colormap: spline evaluation for every pixel vs. lookup in a color table.
+ * The deviation between both is checked in TestIrb.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColormapBenchmark {
+
+	@Param({ BenchmarkData.RESOURCE_SIZE, "1280x960" })
+	public String size;
+
+	@Param({ "true", "false" })
+	public boolean interpolated;
+
+	private IrbImage image;
+
+	private float[] celsiusPixels;
+
+	@Setup
+	public void setup() throws IOException {
+		image = BenchmarkData.decodedImage(size);
+		celsiusPixels = image.getCelsiusPixels();
+	}
+
+	@Benchmark
+	public BufferedImage spline() {
+		return ReferenceArrayToPNG.array2Image(celsiusPixels, image.width, image.height, ArrayToPNG.COLORMAP1, interpolated);
+	}
+
+	@Benchmark
+	public BufferedImage table() {
+		return ArrayToPNG.array2Image(celsiusPixels, image.width, image.height, null, null, interpolated);
+	}
+}
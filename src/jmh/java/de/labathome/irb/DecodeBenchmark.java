@@ -0,0 +1,102 @@
+/* irb
+ * DecodeBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.hoefel.ArrayToPNG;
+
+/**
+ * Decoding of a single IrbImage for all compression types.
+ * The test resources are all uncompressed, so the frames are synthetic;
+ * see {@link ParseBenchmark#readFile()} for decoding a test resource.
+ * The *ToImage benchmarks compare decoding, conversion to deg. Celsius and coloring
+ * in separate passes to the single-pass decoding into Kelvin and a preallocated array in deg. Celsius.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+
+	@Param({ "0", "1", "2" })
+	public int compressionType;
+
+	@Param({ "640x480", "2560x1920" })
+	public String size;
+
+	private ByteBuffer image;
+
+	/** 50x50 pixels in the center of the image */
+	private List<IrbRegion> region;
+
+	/** reused output of the single-pass decoding in deg. Celsius */
+	private float[] celsiusPixels;
+
+	@Setup
+	public void setup() throws IOException {
+		image = BenchmarkData.image(size, compressionType);
+
+		final String[] dimensions = size.split("x");
+		final int width = Integer.parseInt(dimensions[0]);
+		final int height = Integer.parseInt(dimensions[1]);
+		region = Collections.singletonList(new IrbRegion(width / 2 - 25, height / 2 - 25, 50, 50));
+		celsiusPixels = new float[width * height];
+	}
+
+	@Benchmark
+	public IrbImage decode() {
+		return IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit(), false);
+	}
+
+	@Benchmark
+	public IrbImage decodeRaw() {
+		return IrbImage.fromBufferRaw(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit());
+	}
+
+	@Benchmark
+	public List<IrbRegion> decodeRegion() {
+		return IrbRegion.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit(), region);
+	}
+
+	@Benchmark
+	public IrbImage decodeCelsius() {
+		return IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit(), celsiusPixels, null);
+	}
+
+	@Benchmark
+	public IrbImage decodeCelsiusHistogram() {
+		return IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit(), celsiusPixels,
+				new IrbHistogram(233.15F, 393.15F, 1600));
+	}
+
+	@Benchmark
+	public BufferedImage decodeToImage() {
+		IrbImage decoded = decode();
+		return ArrayToPNG.array2Image(decoded.getCelsiusPixels(), decoded.width, decoded.height, null, null, true);
+	}
+
+	@Benchmark
+	public BufferedImage decodeCelsiusToImage() {
+		IrbImage decoded = decodeCelsius();
+		return ArrayToPNG.array2Image(celsiusPixels, decoded.width, decoded.height,
+				decoded.minData - IrbImage.CELSIUS_OFFSET, decoded.maxData - IrbImage.CELSIUS_OFFSET, null, null, true);
+	}
+}
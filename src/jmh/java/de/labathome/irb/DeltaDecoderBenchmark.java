@@ -0,0 +1,64 @@
+/* irb
+ * DeltaDecoderBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding of the pixel data of compression type 2 alone, without parsing the image header or updating the data range.
+ * The pixel data is in a direct buffer, as in a mapped file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeltaDecoderBenchmark {
+
+	@Param({ "640x480", "2560x1920" })
+	public String size;
+
+	private ByteBuffer pixelData;
+
+	private short[] raw;
+
+	private float[] pixels;
+
+	@Setup
+	public void setup() throws IOException {
+		ByteBuffer image = BenchmarkData.image(size, 2);
+		image.position(IrbFrameIndex.IMAGE_METADATA_SIZE);
+		pixelData = ByteBuffer.allocateDirect(image.remaining());
+		pixelData.put(image);
+		pixelData.flip();
+
+		final String[] widthHeight = size.split("x");
+		final int numPixels = Integer.parseInt(widthHeight[0]) * Integer.parseInt(widthHeight[1]);
+		raw = new short[numPixels];
+		pixels = new float[numPixels];
+	}
+
+	@Benchmark
+	public short[] decodeRaw() {
+		IrbDeltaDecoder.decode(pixelData, 0, pixelData.limit(), raw.length, raw, null);
+		return raw;
+	}
+
+	@Benchmark
+	public float[] decodeKelvin() {
+		IrbDeltaDecoder.decode(pixelData, 0, pixelData.limit(), pixels.length, null, pixels);
+		return pixels;
+	}
+}
@@ -0,0 +1,95 @@
+/* irb
+ * ExportBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import eu.hoefel.ArrayToPNG;
+
+/**
+ * Conversion and export of a decoded image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExportBenchmark {
+
+	@Param({ BenchmarkData.RESOURCE_SIZE, "2560x1920" })
+	public String size;
+
+	private IrbImage image;
+
+	private float[] celsiusPixels;
+
+	private File output;
+
+	@Setup
+	public void setup() throws IOException {
+		image = BenchmarkData.decodedImage(size);
+		celsiusPixels = image.getCelsiusPixels();
+		output = File.createTempFile("irb-benchmark", ".out");
+	}
+
+	@TearDown
+	public void tearDown() {
+		output.delete();
+	}
+
+	@Benchmark
+	public float[][] getCelsiusImage() {
+		return image.getCelsiusImage();
+	}
+
+	@Benchmark
+	public float updateDataRange() {
+		image.updateDataRange();
+		return image.maxData;
+	}
+
+	@Benchmark
+	public void exportImageData() {
+		image.exportImageData(output.getPath());
+	}
+
+	/** text export with String.format for every pixel, for comparison with {@link #exportImageData()} */
+	@Benchmark
+	public void formatImageData() throws IOException {
+		try (BufferedWriter w = new BufferedWriter(new FileWriter(output))) {
+			for (int i = image.height - 1; i >= 0; i--) {
+				for (int j = 0; j < image.width; ++j) {
+					w.write(String.format(Locale.ENGLISH, "%8.6f ", celsiusPixels[i * image.width + j]));
+				}
+				w.write("\n");
+			}
+		}
+	}
+
+	@Benchmark
+	public void exportMetaData() {
+		image.exportMetaData(output.getPath());
+	}
+
+	@Benchmark
+	public BufferedImage array2Image() {
+		return ArrayToPNG.array2Image(celsiusPixels, image.width, image.height, null, null, true);
+	}
+}
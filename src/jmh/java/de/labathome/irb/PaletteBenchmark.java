@@ -0,0 +1,84 @@
+/* irb
+ * PaletteBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conversion of uncompressed pixel data to temperatures:
+ * linear interpolation in the palette for every pixel vs. lookup in an {@link IrbPaletteTable}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaletteBenchmark {
+
+	@Param({ BenchmarkData.RESOURCE_SIZE, "1280x960" })
+	public String size;
+
+	private float[] palette;
+
+	private ByteBuffer rawData;
+
+	private float[] pixels;
+
+	@Setup
+	public void setup() throws IOException {
+		ByteBuffer image = BenchmarkData.image(size, 0);
+		IrbImage metadata = IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+		palette = metadata.palette;
+		pixels = new float[metadata.width * metadata.height];
+
+		image.position(IrbFrameIndex.IMAGE_METADATA_SIZE);
+		image.limit(IrbFrameIndex.IMAGE_METADATA_SIZE + 2 * pixels.length);
+		rawData = image.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Benchmark
+	public float[] interpolate() {
+		ByteBuffer buf = rawData.duplicate();
+		for (int i = 0; i < pixels.length; ++i) {
+			short v1 = buf.get();
+			if (v1 < 0) {
+				v1 += 256;
+			}
+			float f = v1 / 256.0F;
+			short v2 = buf.get();
+			if (v2 < 0) {
+				v2 += 256;
+			}
+			float v = palette[v2 + 1] * f + palette[v2] * (1.0F - f);
+			if (v < 0.0F) {
+				v = 0.0F;
+			}
+			pixels[i] = v;
+		}
+		return pixels;
+	}
+
+	@Benchmark
+	public float[] lookup() {
+		final float[] table = IrbPaletteTable.of(palette).table();
+		ShortBuffer buf = rawData.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		for (int i = 0; i < pixels.length; ++i) {
+			pixels[i] = table[buf.get(i) & 0xFFFF];
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,54 @@
+/* irb
+ * ParseBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of the test resource snapshot: headers only and the whole file including the pixel data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+	private ByteBuffer file;
+
+	private ByteBuffer image;
+
+	@Setup
+	public void setup() throws IOException {
+		file = BenchmarkData.resource(BenchmarkData.RESOURCE);
+		image = BenchmarkData.resourceImage();
+	}
+
+	@Benchmark
+	public IrbFileHeader fileHeader() {
+		return IrbFileHeader.fromBuffer(file.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	@Benchmark
+	public IrbImage imageMetadata() {
+		ByteBuffer buf = image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		return IrbImage.fromBuffer(buf, 0, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+	}
+
+	@Benchmark
+	public IrbFile readFile() {
+		return IrbFile.read(file.duplicate().order(ByteOrder.LITTLE_ENDIAN), false);
+	}
+}
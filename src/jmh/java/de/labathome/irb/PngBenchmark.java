@@ -0,0 +1,82 @@
+/* irb
+ * PngBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.hoefel.ArrayToPNG;
+import eu.hoefel.PngEncoder;
+
+/**
+ * Encoding of a rendered image as PNG: ImageIO vs. PngEncoder,
+ * for a deflate level of {@link Deflater#BEST_SPEED} and 6 as well as the UP and ADAPTIVE row filters.
+ * Each benchmark returns the size of the encoded image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PngBenchmark {
+
+	@Param({ BenchmarkData.RESOURCE_SIZE, "1280x960" })
+	public String size;
+
+	private BufferedImage image;
+
+	private int[] argb;
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws IOException {
+		IrbImage decoded = BenchmarkData.decodedImage(size);
+		image = ArrayToPNG.array2Image(decoded.getCelsiusPixels(), decoded.width, decoded.height, null, null, true);
+		argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	@Benchmark
+	public int imageIO() throws IOException {
+		out.reset();
+		ImageIO.write(image, "png", out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int encoderDefault() throws IOException {
+		return encode(PngEncoder.DEFAULT);
+	}
+
+	@Benchmark
+	public int encoderUp() throws IOException {
+		return encode(new PngEncoder(6, PngEncoder.Filter.UP));
+	}
+
+	@Benchmark
+	public int encoderAdaptive() throws IOException {
+		return encode(new PngEncoder(6, PngEncoder.Filter.ADAPTIVE));
+	}
+
+	private int encode(PngEncoder encoder) throws IOException {
+		out.reset();
+		encoder.writeArgb(argb, image.getWidth(), image.getHeight(), out);
+		return out.size();
+	}
+}
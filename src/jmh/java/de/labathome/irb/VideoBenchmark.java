@@ -0,0 +1,83 @@
+/* irb
+ * VideoBenchmark Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Decoding of all frames of a video: sequential vs. parallel on all available cores.
+ * A video can be given with {@code -p filename=<file>};
+ * otherwise a video of 50 frames of 640x480 pixels is generated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VideoBenchmark {
+
+	/** video to decode; empty to generate one */
+	@Param({ "" })
+	public String filename;
+
+	/** compression type of the generated video */
+	@Param({ "0", "1", "2" })
+	public int compressionType;
+
+	private File generated;
+
+	private IrbFile irbFile;
+
+	private ExecutorService executor;
+
+	@Setup
+	public void setup() throws IOException {
+		String video = filename;
+		if (video.isEmpty()) {
+			generated = File.createTempFile("irb-benchmark", ".irb");
+			new IrbGenerator(IrbFileType.VARIOCAM, 640, 480, compressionType).write(generated.getPath(), 50);
+			video = generated.getPath();
+		}
+		irbFile = IrbFile.open(video);
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		irbFile.close();
+		if (generated != null) {
+			generated.delete();
+		}
+	}
+
+	@Benchmark
+	public float sequential() {
+		float maxData = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < irbFile.getFrameCount(); ++i) {
+			maxData = Math.max(maxData, irbFile.getFrame(i).maxData);
+		}
+		return maxData;
+	}
+
+	@Benchmark
+	public List<IrbImage> parallel() {
+		return irbFile.getFrames(0, irbFile.getFrameCount(), executor);
+	}
+}
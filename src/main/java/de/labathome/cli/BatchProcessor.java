@@ -0,0 +1,243 @@
+/* irb
+ * BatchProcessor Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes many *.irb files in one JVM, so that startup and JIT warm-up are paid only once.
+ * The files are given as files, directories (searched recursively for *.irb files) or glob patterns
+ * and are processed in parallel by a work-stealing pool.
+ * A failing file does not abort the batch; all failures are listed at the end.
+ */
+class BatchProcessor {
+
+	/** processes a single file */
+	interface FileTask {
+
+		/**
+		 * @param filename file to process
+		 * @return number of failed steps while processing the file; 0 if successful
+		 * @throws Exception if the file could not be processed at all
+		 */
+		int process(String filename) throws Exception;
+	}
+
+	/** outcome of processing a single file */
+	private static final class Result {
+		final int fileIdx;
+		final String failure;
+
+		Result(int fileIdx, String failure) {
+			this.fileIdx = fileIdx;
+			this.failure = failure;
+		}
+	}
+
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+	private final int numWorkers;
+
+	private final PrintStream out;
+
+	/**
+	 * @param numWorkers number of files to process in parallel
+	 * @param out stream to print progress and failures to
+	 */
+	BatchProcessor(int numWorkers, PrintStream out) {
+		if (numWorkers < 1) {
+			throw new RuntimeException("need at least one worker, but got " + numWorkers);
+		}
+		this.numWorkers = numWorkers;
+		this.out = out;
+	}
+
+	/**
+	 * @param input file, directory or glob pattern
+	 * @return true if the input is a single file that is not to be processed as a batch
+	 */
+	static boolean isSingleFile(String input) {
+		return !isGlob(input) && !new File(input).isDirectory();
+	}
+
+	private static boolean isGlob(String input) {
+		for (int i = 0; i < input.length(); ++i) {
+			if (GLOB_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resolve the inputs into a list of files.
+	 * Directories are searched recursively for files ending in {@code .irb}.
+	 * Glob patterns, e.g. {@code campaign/**}{@code /*.irb}, are matched below the directory they start with,
+	 * or below the current directory if they do not start with one.
+	 * As in shells, {@code **}{@code /} also matches no directory at all, e.g. {@code campaign/shot.irb}.
+	 * Other inputs are taken as they are, so that missing files show up as failures.
+	 *
+	 * @param inputs files, directories or glob patterns
+	 * @return files to process, in the order of the inputs and sorted within each directory or pattern
+	 * @throws IOException if a directory cannot be walked
+	 */
+	static List<String> collectFiles(List<String> inputs) throws IOException {
+		Set<String> files = new LinkedHashSet<>();
+		for (String input : inputs) {
+			if (isGlob(input)) {
+				// walk the part of the pattern before the first glob character
+				final int globStart = indexOfGlob(input);
+				final int separator = Math.max(input.lastIndexOf('/', globStart), input.lastIndexOf(File.separatorChar, globStart));
+				final Path base = Paths.get(separator < 0 ? "" : input.substring(0, separator + 1));
+				files.addAll(walk(base, globMatcher(input)));
+			} else if (new File(input).isDirectory()) {
+				files.addAll(walk(Paths.get(input), path -> path.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".irb")));
+			} else {
+				files.add(input);
+			}
+		}
+		return new ArrayList<>(files);
+	}
+
+	private static int indexOfGlob(String input) {
+		int idx = input.length();
+		for (int i = 0; i < GLOB_CHARACTERS.length(); ++i) {
+			final int charIdx = input.indexOf(GLOB_CHARACTERS.charAt(i));
+			if (charIdx >= 0) {
+				idx = Math.min(idx, charIdx);
+			}
+		}
+		return idx;
+	}
+
+	/**
+	 * @param pattern glob pattern
+	 * @return filter matching the pattern, where each {@code **}{@code /} matches zero or more directories
+	 */
+	private static Predicate<Path> globMatcher(String pattern) {
+		// PathMatcher needs at least one directory for "**/", so also match all variants with some of them left out
+		List<String> variants = new ArrayList<>();
+		variants.add(pattern);
+		for (int i = 0; i < variants.size(); ++i) {
+			final String variant = variants.get(i);
+			for (int idx = variant.indexOf("**/"); idx >= 0; idx = variant.indexOf("**/", idx + 1)) {
+				final String shorter = variant.substring(0, idx) + variant.substring(idx + 3);
+				if (!variants.contains(shorter)) {
+					variants.add(shorter);
+				}
+			}
+		}
+
+		List<PathMatcher> matchers = new ArrayList<>(variants.size());
+		for (String variant : variants) {
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + variant));
+		}
+		return path -> matchers.stream().anyMatch(matcher -> matcher.matches(path));
+	}
+
+	private static List<String> walk(Path base, Predicate<Path> filter) throws IOException {
+		if (!Files.isDirectory(base)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> paths = Files.walk(base)) {
+			return paths
+					.filter(Files::isRegularFile)
+					.filter(filter)
+					.map(Path::toString)
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Process all files in parallel, printing the progress after each file.
+	 *
+	 * @param filenames files to process
+	 * @param task      processing of a single file
+	 * @return failure messages by file name, in the order of the files; empty if all files were processed successfully
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	Map<String, String> run(List<String> filenames, FileTask task) throws InterruptedException {
+		final long startTime = System.nanoTime();
+		final String[] failed = new String[filenames.size()];
+		int numFailed = 0;
+
+		ExecutorService executor = Executors.newWorkStealingPool(numWorkers);
+		try {
+			CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+			for (int fileIdx = 0; fileIdx < filenames.size(); ++fileIdx) {
+				final int idx = fileIdx;
+				completion.submit(() -> {
+					try {
+						final int failedSteps = task.process(filenames.get(idx));
+						return new Result(idx, (failedSteps == 0) ? null : failedSteps + " step(s) failed");
+					} catch (Throwable e) {
+						// also Errors, e.g. an OutOfMemoryError while processing a single large file
+						return new Result(idx, e.toString());
+					}
+				});
+			}
+
+			for (int i = 0; i < filenames.size(); ++i) {
+				Result result;
+				try {
+					result = completion.take().get();
+				} catch (ExecutionException e) {
+					// not expected, as everything is caught in the task
+					throw new RuntimeException(e.getCause());
+				}
+				if (result.failure != null) {
+					failed[result.fileIdx] = result.failure;
+					numFailed++;
+				}
+				out.printf("[%d/%d] %s %s\n", i + 1, filenames.size(),
+						(result.failure == null) ? "done:  " : "FAILED:", filenames.get(result.fileIdx));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Map<String, String> failures = new LinkedHashMap<>();
+		for (int fileIdx = 0; fileIdx < filenames.size(); ++fileIdx) {
+			if (failed[fileIdx] != null) {
+				failures.put(filenames.get(fileIdx), failed[fileIdx]);
+			}
+		}
+
+		out.printf("processed %d files in %.1f s: %d succeeded, %d failed\n",
+				filenames.size(), (System.nanoTime() - startTime) / 1.0e9,
+				filenames.size() - numFailed, numFailed);
+		if (!failures.isEmpty()) {
+			out.println("failed files:");
+			for (Map.Entry<String, String> failure : failures.entrySet()) {
+				out.println("  " + failure.getKey() + ": " + failure.getValue());
+			}
+		}
+		return failures;
+	}
+}
@@ -0,0 +1,231 @@
+/* irb
+ * FrameExportPipeline Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import de.labathome.irb.IrbFile;
+import de.labathome.irb.IrbImage;
+
+/**
+ * Exports the video frames of a file in stages that run concurrently:
+ * frames are decoded on several threads, including the calling thread,
+ * writing the temperatures in Kelvin and in deg. Celsius in a single pass,
+ * and then handed to each of the writers, e.g. for text, JSON and PNG output.
+ * The stages are joined by bounded queues, so decoding waits for the writers to catch up
+ * and the number of frames held in memory is bounded by the queue depth instead of the number of frames.
+ * A failure of a single frame, including an Error such as an OutOfMemoryError, is counted and skipped,
+ * but never stops a stage: a stage that stopped draining its queue would block all stages in front of it.
+ */
+class FrameExportPipeline {
+
+	/** writes one output file of a frame */
+	interface FrameWriter {
+		void write(ExportedFrame frame) throws Exception;
+	}
+
+	/** a frame on its way through the pipeline */
+	static final class ExportedFrame {
+
+		/** 0-based frame index */
+		final int frameIdx;
+
+		/** file name suffix for all outputs of this frame, e.g. the frame index */
+		final String suffix;
+
+		/** decoded image in Kelvin; set by the decoding stage */
+		IrbImage image;
+
+		/** [height * width] image data in deg. Celsius; written by the decoding stage along with {@link #image} */
+		float[] celsiusPixels;
+
+		ExportedFrame(int frameIdx, String suffix) {
+			this.frameIdx = frameIdx;
+			this.suffix = suffix;
+		}
+	}
+
+	/** marks the end of the frames in a queue */
+	private static final ExportedFrame END = new ExportedFrame(-1, null);
+
+	private final int queueDepth;
+
+	private final int numDecoders;
+
+	private final List<String> writerNames = new ArrayList<>();
+
+	private final List<Integer> writerThreads = new ArrayList<>();
+
+	private final List<FrameWriter> writers = new ArrayList<>();
+
+	private final List<Runnable> writerThreadEnds = new ArrayList<>();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private final PrintStream out;
+
+	private final PrintStream err;
+
+	/**
+	 * @param queueDepth    maximum number of frames waiting in front of each stage
+	 * @param numDecoders   number of threads decoding frames, including the thread calling {@link #run}
+	 * @param out           stream to print progress and failures to
+	 * @param err           stream to print the stack traces of failures to
+	 */
+	FrameExportPipeline(int queueDepth, int numDecoders, PrintStream out, PrintStream err) {
+		if (queueDepth < 1 || numDecoders < 1) {
+			throw new RuntimeException("need queueDepth >= 1 and numDecoders >= 1, but got " + queueDepth + " and " + numDecoders);
+		}
+		this.queueDepth = queueDepth;
+		this.numDecoders = numDecoders;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * @param name       name of the writer stage, used for thread names and error messages
+	 * @param numThreads number of threads running this writer
+	 * @param writer     writer to call for every frame
+	 * @return this pipeline
+	 */
+	FrameExportPipeline addWriter(String name, int numThreads, FrameWriter writer) {
+		return addWriter(name, numThreads, writer, () -> { });
+	}
+
+	/**
+	 * @param name        name of the writer stage, used for thread names and error messages
+	 * @param numThreads  number of threads running this writer
+	 * @param writer      writer to call for every frame
+	 * @param threadEnd   called by each thread of this writer once it is done,
+	 *                    e.g. to release per-thread resources of the writer
+	 * @return this pipeline
+	 */
+	FrameExportPipeline addWriter(String name, int numThreads, FrameWriter writer, Runnable threadEnd) {
+		if (numThreads < 1) {
+			throw new RuntimeException("writer " + name + " needs at least one thread, but got " + numThreads);
+		}
+		writerNames.add(name);
+		writerThreads.add(numThreads);
+		writers.add(writer);
+		writerThreadEnds.add(threadEnd);
+		return this;
+	}
+
+	/**
+	 * Export a range of frames. The calling thread is one of the decoding threads.
+	 *
+	 * @param irbFile  file opened via {@link IrbFile#open(String)}
+	 * @param fromIdx  0-based index of the first frame to export (inclusive)
+	 * @param toIdx    0-based index of the last frame to export (exclusive)
+	 * @param suffixes file name suffix for all outputs of a given frame index
+	 * @return number of failed decoding or writing steps
+	 * @throws InterruptedException if interrupted while waiting for a stage
+	 */
+	int run(IrbFile irbFile, int fromIdx, int toIdx, IntFunction<String> suffixes) throws InterruptedException {
+		List<BlockingQueue<ExportedFrame>> decoded = new ArrayList<>();
+		List<Thread> writerStage = new ArrayList<>();
+		for (int w = 0; w < writers.size(); ++w) {
+			BlockingQueue<ExportedFrame> queue = new ArrayBlockingQueue<>(queueDepth);
+			decoded.add(queue);
+			final String name = writerNames.get(w);
+			final FrameWriter writer = writers.get(w);
+			final Runnable threadEnd = writerThreadEnds.get(w);
+			for (int t = 0; t < writerThreads.get(w); ++t) {
+				writerStage.add(startStage(name + "-" + t, () -> {
+					try {
+						ExportedFrame frame;
+						while ((frame = queue.take()) != END) {
+							try {
+								writer.write(frame);
+							} catch (Throwable e) {
+								fail(name, frame.frameIdx, e);
+							}
+						}
+					} finally {
+						threadEnd.run();
+					}
+				}));
+			}
+		}
+
+		// the decoders take the frames in order, each as soon as it is done with its previous frame
+		final AtomicInteger nextFrameIdx = new AtomicInteger(fromIdx);
+		final StageLoop decoder = () -> {
+			int frameIdx;
+			while ((frameIdx = nextFrameIdx.getAndIncrement()) < toIdx) {
+				out.printf("exporting frame %4d/%4d...\n", frameIdx + 1, toIdx);
+				ExportedFrame frame;
+				try {
+					frame = new ExportedFrame(frameIdx, suffixes.apply(frameIdx));
+					final IrbImage metadata = irbFile.getFrameMetadata(frameIdx);
+					frame.celsiusPixels = new float[metadata.width * metadata.height];
+					frame.image = irbFile.getFrame(frameIdx, frame.celsiusPixels, null);
+				} catch (Throwable e) {
+					fail("decode", frameIdx, e);
+					continue;
+				}
+				for (BlockingQueue<ExportedFrame> queue : decoded) {
+					queue.put(frame);
+				}
+			}
+		};
+
+		List<Thread> decodingStage = new ArrayList<>();
+		for (int t = 1; t < numDecoders; ++t) {
+			decodingStage.add(startStage("decode-" + t, decoder));
+		}
+
+		try {
+			decoder.run();
+		} finally {
+			// no more frames to hand out in case the calling thread stopped early;
+			// then shut down the stages one after another, so that all frames pass through
+			nextFrameIdx.set(toIdx);
+			for (Thread thread : decodingStage) {
+				thread.join();
+			}
+			for (int w = 0; w < writers.size(); ++w) {
+				for (int t = 0; t < writerThreads.get(w); ++t) {
+					decoded.get(w).put(END);
+				}
+			}
+			for (Thread thread : writerStage) {
+				thread.join();
+			}
+		}
+
+		return failures.get();
+	}
+
+	private interface StageLoop {
+		void run() throws InterruptedException;
+	}
+
+	private static Thread startStage(String name, StageLoop loop) {
+		Thread thread = new Thread(() -> {
+			try {
+				loop.run();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "export-" + name);
+		thread.start();
+		return thread;
+	}
+
+	private void fail(String stage, int frameIdx, Throwable e) {
+		failures.incrementAndGet();
+		out.printf("%s failed for frame %d\n", stage, frameIdx);
+		// no chance to see if something within threads goes wrong, if not explicitly caught here...
+		e.printStackTrace(err);
+	}
+}
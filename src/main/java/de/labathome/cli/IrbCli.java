@@ -5,150 +5,271 @@
 
 package de.labathome.cli;
 
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import aliceinnets.python.jyplot.JyPlot;
 // Our packages
+import de.labathome.irb.IrbDiagnostics;
+import de.labathome.irb.IrbDiagnosticsListener;
 import de.labathome.irb.IrbFile;
+import de.labathome.irb.IrbFileType;
 import de.labathome.irb.IrbImage;
+import de.labathome.irb.IrbTextWriter;
 //3rd Party packages that are part of this repo
 import eu.hoefel.ArrayToPNG;
+import eu.hoefel.PngEncoder;
 // External includes
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
-@Command(name = "irb", version = "irb 1.1.0", description = "Process *.irb files")
+@Command(name = "irb", version = "irb 1.1.0", description = "Process *.irb files",
+		subcommands = {IrbScanCommand.class, IrbTraceCommand.class, IrbStatsCommand.class})
 public class IrbCli implements Callable<Integer> {
 
-	@Parameters(index = "0", description = "The *.irb file to read.")
-	private String filename;
+	// optional, so that subcommands can be used without it
+	@Parameters(arity = "0..*", description = "The *.irb file to read; "
+			+ "several files, directories or glob patterns (e.g. 'campaign/**/*.irb') are processed in parallel in batch mode.")
+	private List<String> inputs;
 
 	@Option(names = {"--headless"}, description = "Skip GUI plot using JyPlot and just dump image data to disk.")
 	private boolean runHeadless;
 
+	@Option(names = {"-q", "--quiet"}, description = "Do not print diagnostic messages while parsing the file.")
+	private boolean quiet;
+
+	@Option(names = {"--png-format"}, description = "Format of the PNG images: ${COMPLETION-CANDIDATES}; default: ${DEFAULT-VALUE}.")
+	private PngFormat pngFormat = PngFormat.RGB;
+
+	@Option(names = {"--png-level"}, description = "Deflate level of the PNG images: 0 (fastest) to 9 (smallest); default: ${DEFAULT-VALUE}.")
+	private int pngLevel = PngEncoder.DEFAULT.level();
+
+	@Option(names = {"--png-filter"}, description = "Row filter of the PNG images: ${COMPLETION-CANDIDATES}; default: ${DEFAULT-VALUE}.")
+	private PngEncoder.Filter pngFilter = PngEncoder.DEFAULT.filter();
+
+	@Option(names = {"--threads"}, description = "Total number of threads to export video frames with, shared by all files processed in parallel; default: number of cores.")
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	@Option(names = {"--queue-depth"}, description = "Number of video frames to keep in memory per export stage; default: ${DEFAULT-VALUE}.")
+	private int queueDepth = 8;
+
+	@Option(names = {"--workers"}, description = "Number of files to process in parallel in batch mode, each with an equal share of --threads; default: number of cores.")
+	private int numWorkers = Runtime.getRuntime().availableProcessors();
+
+	/** output formats for the PNG images */
+	enum PngFormat {
+		/** RGB image with colormap, written by ImageIO */
+		IMAGEIO,
+
+		/** RGB image with colormap */
+		RGB,
+
+		/** 8-bit indexed image with 256 colors of the colormap */
+		INDEXED,
+
+		/** 16-bit grayscale image of the temperature in units of 0.01 K, i.e., without colormap */
+		GRAY16
+	}
+
 	public Integer call() throws Exception {
+		if (inputs == null || inputs.isEmpty()) {
+			System.err.println("Missing required parameter: <inputs>");
+			CommandLine.usage(this, System.err);
+			return 2;
+		}
+
+		if (inputs.size() == 1 && BatchProcessor.isSingleFile(inputs.get(0))) {
+			IrbDiagnostics.setListener(quiet ? IrbDiagnosticsListener.NONE : IrbDiagnosticsListener.STDOUT);
+			try {
+				return (process(inputs.get(0), System.out, System.err, runHeadless, numThreads) > 0) ? 1 : 0;
+			} catch (Exception e) {
+				e.printStackTrace();
+				return 1;
+			}
+		}
+
+		// batch mode: messages of files processed in parallel would be interleaved, so only report progress
+		IrbDiagnostics.setListener(IrbDiagnosticsListener.NONE);
+		final PrintStream discard = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) { }
+
+			@Override
+			public void write(byte[] b, int off, int len) { }
+		});
+
+		List<String> filenames = BatchProcessor.collectFiles(inputs);
+		System.out.println("Processing " + filenames.size() + " files on " + numWorkers + " workers");
+
+		// the files processed at the same time share the export threads;
+		// each worker thread decodes the video frames of its file itself, so it counts as one of them
+		final int threadsPerFile = Math.max(1, numThreads / Math.max(1, Math.min(numWorkers, filenames.size())));
+		Map<String, String> failures = new BatchProcessor(numWorkers, System.out)
+				.run(filenames, filename -> process(filename, discard, discard, true, threadsPerFile));
+		return failures.isEmpty() ? 0 : 1;
+	}
+
+	/**
+	 * Export all images and video frames of a file.
+	 *
+	 * @param filename file to process
+	 * @param out stream to print messages to
+	 * @param err stream to print the stack traces of failed export steps to
+	 * @param headless if true, no plots are made using JyPlot
+	 * @param numThreads number of threads to export video frames with
+	 * @return number of failed export steps
+	 * @throws Exception if the file cannot be read
+	 */
+	private int process(String filename, PrintStream out, PrintStream err, boolean headless, int numThreads) throws Exception {
+		out.println("Processing file: " + filename);
+		IrbFile irbFile = IrbFile.open(filename);
 		try {
-            System.out.println("Processing file: " + filename);
-            IrbFile irbFile = IrbFile.fromFile(filename);
-
-            System.out.println("number of images: " + irbFile.images.size());
-
-            int imageIndex = 0;
-            for (IrbImage image : irbFile.images) {
-
-                System.out.println("\n\nimage " + imageIndex);
-                System.out.printf("            env temp: %g °C\n", image.environmentalTemp - IrbImage.CELSIUS_OFFSET);
-                System.out.printf("           path temp: %g °C\n", image.pathTemperature   - IrbImage.CELSIUS_OFFSET);
-                System.out.printf("     calib range min: %g °C\n", image.calibRangeMin     - IrbImage.CELSIUS_OFFSET);
-                System.out.printf("     calib range max: %g °C\n", image.calibRangeMax     - IrbImage.CELSIUS_OFFSET);
-                System.out.printf("shot range start err: %g °C\n", image.shotRangeStartErr - IrbImage.CELSIUS_OFFSET);
-                System.out.printf("     shot range size: %g  K\n", image.shotRangeSize);
-
-                // try to export data
-                try {
-                    System.out.print("starting to export to text files... ");
-                    image.exportImageData(String.format(filename + ".img_%d.dat", imageIndex));
-                    image.exportMetaData(String.format(filename + ".meta_%d.json", imageIndex));
-                    System.out.println("done");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-
-                try {
-                    System.out.print("starting to dump image as PNG... ");
-                    ArrayToPNG.dumpAsPng(image.getCelsiusImage(),
-                            String.format(filename + ".img_%d.png", imageIndex));
-                    System.out.println("done");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-
-                if (!runHeadless) {
-                    // try to plot using JyPlot
-                    try {
-                        System.out.print("plot using JyPlot... ");
-                        JyPlot plt = new JyPlot();
-
-                        plt.figure();
-                        plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('jet')");
-                        // plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('gist_ncar')");
-                        // plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('nipy_spectral')");
-                        plt.colorbar();
-                        plt.title(String.format("image %d", imageIndex));
-
-                        plt.show();
-                        plt.exec();
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-                System.out.println("done");
-                imageIndex++;
-            }
-
-            if (irbFile.frames != null) {
-            	// have video frames -> dump them now
-
-            	// parallelize over frames to speed up export
-            	final int numThreads = Runtime.getRuntime().availableProcessors();
-            	ExecutorService service = Executors.newFixedThreadPool(numThreads);
-
-            	for (int frameIdx = 0; frameIdx < irbFile.frames.size(); ++frameIdx) {
-    				IrbFile frame = irbFile.frames.get(frameIdx);
-    				if (frame.images == null) {
-    					System.out.println("skipping frame " + frameIdx + ", since no image was present");
-    					continue;
-    				}
-
-    				for (int imageIdx = 0; imageIdx < frame.images.size(); ++imageIdx) {
-    					final IrbImage image = frame.images.get(imageIdx);
-
-    					final int finalFrameIdx = frameIdx;
-    					final int finalImageIdx = imageIdx;
-
-        				service.execute(() -> {
-        					try {
-	        					System.out.printf("exporting frame %4d/%4d...\n", finalFrameIdx+1, irbFile.frames.size());
-
-	        					image.exportImageData(String.format(filename + ".img_%04d_%04d.dat", finalFrameIdx, finalImageIdx));
-		                        image.exportMetaData(String.format(filename + ".meta_%04d_%04d.json", finalFrameIdx, finalImageIdx));
-		                        ArrayToPNG.dumpAsPng(image.getCelsiusImage(), filename + String.format(".img_%04d_%04d.png", finalFrameIdx, finalImageIdx));
-
-		                        if (!runHeadless) {
-		                        	JyPlot plt = new JyPlot();
-
-		                            plt.figure();
-		                            plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('jet')");
-		                            // plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('gist_ncar')");
-		                            // plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('nipy_spectral')");
-		                            plt.colorbar();
-		                            plt.title(String.format("frame %d, image %d", finalFrameIdx, finalImageIdx));
-		                            plt.savefig(filename + String.format(".plot_%04d_%04d.png", finalFrameIdx, finalImageIdx));
-
-		                            plt.exec();
-		                        }
-        					} catch (Exception e) {
-        						// no chance to see if something within threads goes wrong, if not explicitly caught here...
-        						e.printStackTrace();
-        					}
-        				});
-    				}
-            	}
-
-            	service.shutdown();
-            	service.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-		return 0;
+			int failedSteps = 0;
+
+			out.println("number of images: " + irbFile.images.size());
+
+			int imageIndex = 0;
+			for (IrbImage image : irbFile.images) {
+
+				out.println("\n\nimage " + imageIndex);
+				out.printf("            env temp: %g °C\n", image.environmentalTemp - IrbImage.CELSIUS_OFFSET);
+				out.printf("           path temp: %g °C\n", image.pathTemperature   - IrbImage.CELSIUS_OFFSET);
+				out.printf("     calib range min: %g °C\n", image.calibRangeMin     - IrbImage.CELSIUS_OFFSET);
+				out.printf("     calib range max: %g °C\n", image.calibRangeMax     - IrbImage.CELSIUS_OFFSET);
+				out.printf("shot range start err: %g °C\n", image.shotRangeStartErr - IrbImage.CELSIUS_OFFSET);
+				out.printf("     shot range size: %g  K\n", image.shotRangeSize);
+
+				// try to export data
+				try {
+					out.print("starting to export to text files... ");
+					IrbTextWriter.write(String.format(filename + ".img_%d.dat", imageIndex), image.getCelsiusPixels(), image.width, image.height, 0.0F);
+					image.writeMetaData(String.format(filename + ".meta_%d.json", imageIndex));
+					out.println("done");
+				} catch (Exception e) {
+					e.printStackTrace(err);
+					failedSteps++;
+				}
+
+				try {
+					out.print("starting to dump image as PNG... ");
+					dumpAsPng(image, image.getCelsiusPixels(), String.format(filename + ".img_%d.png", imageIndex));
+					out.println("done");
+				} catch (Exception e) {
+					e.printStackTrace(err);
+					failedSteps++;
+				}
+
+				if (!headless) {
+					// try to plot using JyPlot
+					try {
+						out.print("plot using JyPlot... ");
+						JyPlot plt = new JyPlot();
+
+						plt.figure();
+						plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('jet')");
+						// plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('gist_ncar')");
+						// plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('nipy_spectral')");
+						plt.colorbar();
+						plt.title(String.format("image %d", imageIndex));
+
+						plt.show();
+						plt.exec();
+
+					} catch (Exception e) {
+						e.printStackTrace(err);
+						failedSteps++;
+					}
+				}
+				out.println("done");
+				imageIndex++;
+			}
+
+			// video frames following the images read above
+			final boolean isOSaveIrb = irbFile.fileType() == IrbFileType.O_SAVE_IRB;
+			final int firstFrameIdx = isOSaveIrb ? 0 : irbFile.images.size();
+			if (irbFile.getFrameCount() > firstFrameIdx) {
+				// have video frames -> dump them now
+
+				// overlap decoding and export of frames, splitting the threads among the stages:
+				// a quarter decodes (including this thread), a quarter writes text and the rest writes PNGs;
+				// the JSON metadata is small enough for a single thread
+				final int numDecoders = Math.max(1, numThreads / 4);
+				final int numTextWriters = Math.max(1, numThreads / 4);
+				final int numPngWriters = Math.max(1, numThreads - numDecoders - numTextWriters);
+				FrameExportPipeline pipeline = new FrameExportPipeline(queueDepth, numDecoders, out, err)
+						.addWriter("dat", numTextWriters, frame -> IrbTextWriter.write(filename + ".img" + frame.suffix + ".dat",
+								frame.celsiusPixels, frame.image.width, frame.image.height, 0.0F))
+						.addWriter("json", 1, frame -> frame.image.writeMetaData(filename + ".meta" + frame.suffix + ".json"))
+						.addWriter("png", numPngWriters, frame -> dumpAsPng(frame.image, frame.celsiusPixels, filename + ".img" + frame.suffix + ".png"),
+								PngEncoder::end);
+				if (!headless) {
+					pipeline.addWriter("plot", 1, frame -> {
+						JyPlot plt = new JyPlot();
+
+						plt.figure();
+						plt.imshow(frame.image.getCelsiusImage(), "cmap=plt.get_cmap('jet')");
+						// plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('gist_ncar')");
+						// plt.imshow(image.getCelsiusImage(), "cmap=plt.get_cmap('nipy_spectral')");
+						plt.colorbar();
+						plt.title(String.format("frame %d, image %d", frame.frameIdx, 0));
+						plt.savefig(filename + ".plot" + frame.suffix + ".png");
+
+						plt.exec();
+					});
+				}
+
+				// same file names as when the frames were read all at once:
+				// oSaveIRB frames have one image each; VARIOCAM frames are counted along with the images
+				failedSteps += pipeline.run(irbFile, firstFrameIdx, irbFile.getFrameCount(), frameIdx -> isOSaveIrb
+						? String.format("_%04d_%04d", frameIdx, 0)
+						: String.format("_%d", frameIdx));
+			}
+
+			return failedSteps;
+		} finally {
+			irbFile.close();
+			// the images above were encoded in this thread
+			PngEncoder.end();
+		}
+	}
+
+	/**
+	 * Write an image as PNG in the selected format.
+	 *
+	 * @param image image to write
+	 * @param celsiusPixels [height * width] image data in deg. Celsius
+	 * @param pngFilename file to write
+	 */
+	private void dumpAsPng(IrbImage image, float[] celsiusPixels, String pngFilename) {
+		PngEncoder encoder = new PngEncoder(pngLevel, pngFilter);
+
+		// known from decoding, so the colormap does not need another pass over the pixels
+		final double minCelsius = image.minData - IrbImage.CELSIUS_OFFSET;
+		final double maxCelsius = image.maxData - IrbImage.CELSIUS_OFFSET;
+		switch (pngFormat) {
+		case IMAGEIO:
+			ArrayToPNG.dumpAsPng(celsiusPixels, image.width, image.height, pngFilename);
+			break;
+		case RGB:
+			ArrayToPNG.dumpAsPng(celsiusPixels, image.width, image.height, minCelsius, maxCelsius, null, null, pngFilename, true, encoder);
+			break;
+		case INDEXED:
+			ArrayToPNG.dumpAsIndexedPng(celsiusPixels, image.width, image.height, minCelsius, maxCelsius, null, pngFilename, true, encoder);
+			break;
+		case GRAY16:
+			final float[] pixels = image.pixels;
+			final short[] values = new short[pixels.length];
+			for (int i = 0; i < pixels.length; ++i) {
+				values[i] = (short) Math.max(0, Math.min(0xFFFF, Math.round(pixels[i] * 100.0F)));
+			}
+			encoder.writeGray16(values, image.width, image.height, pngFilename);
+			break;
+		}
 	}
 
     public static void main(String[] args) {
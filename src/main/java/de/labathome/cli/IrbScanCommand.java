@@ -0,0 +1,106 @@
+/* irb
+ * IrbScanCommand Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import de.labathome.irb.IrbDiagnostics;
+import de.labathome.irb.IrbDiagnosticsListener;
+import de.labathome.irb.IrbFileInfo;
+import de.labathome.irb.IrbImage;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+@Command(name = "scan", description = "Print the metadata of *.irb files as one JSON record per line, without reading any image data.")
+public class IrbScanCommand implements Callable<Integer> {
+
+	@Parameters(arity = "1..*", description = "The *.irb files, directories or glob patterns to scan.")
+	private List<String> filenames;
+
+	@Option(names = {"--frames"}, description = "Print one record per video frame instead of one record per file.")
+	private boolean scanFrames;
+
+	public Integer call() throws Exception {
+		// stdout is reserved for the records
+		IrbDiagnostics.setListener(IrbDiagnosticsListener.NONE);
+
+		Gson gson = new Gson();
+		int failures = 0;
+		Writer w = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		try {
+			for (String filename : BatchProcessor.collectFiles(filenames)) {
+				IrbFileInfo info;
+				try {
+					info = IrbFileInfo.scan(filename, scanFrames);
+				} catch (Exception e) {
+					System.err.println("failed to scan " + filename + ": " + e);
+					failures++;
+					continue;
+				}
+
+				if (scanFrames) {
+					for (int frameIdx = 0; frameIdx < info.frames.size(); ++frameIdx) {
+						JsonObject record = record(info, info.frames.get(frameIdx));
+						record.addProperty("frame", frameIdx);
+						record.addProperty("offset", info.frameIndex.offset(frameIdx));
+						gson.toJson(record, w);
+						w.write('\n');
+					}
+				} else {
+					JsonObject record = record(info, info.image);
+					if (info.image == null) {
+						record.addProperty("images", 0);
+					}
+					gson.toJson(record, w);
+					w.write('\n');
+				}
+			}
+		} finally {
+			// System.out stays open
+			w.flush();
+		}
+		return (failures == 0) ? 0 : 1;
+	}
+
+	/**
+	 * @param info file to describe
+	 * @param image metadata of the image to describe; may be null
+	 * @return record with the file properties and the image metadata relevant for cataloguing
+	 */
+	private static JsonObject record(IrbFileInfo info, IrbImage image) {
+		JsonObject record = new JsonObject();
+		record.addProperty("file", info.filename);
+		record.addProperty("fileSize", info.fileSize);
+		record.addProperty("fileType", info.header.fileType.toString());
+		if (image != null) {
+			record.addProperty("width", image.width);
+			record.addProperty("height", image.height);
+			record.addProperty("compression", image.compression_type);
+			record.addProperty("device", image.device);
+			record.addProperty("deviceSerial", image.deviceSerial);
+			record.addProperty("optics", image.optics);
+			record.addProperty("opticsSerial", image.opticsSerial);
+			record.addProperty("timestamp", image.timestamp.toInstant().toString());
+			record.addProperty("timestampMillisecond", image.timestampMillisecond);
+			record.addProperty("emissivity", image.emissivity);
+			record.addProperty("distance", image.distance);
+			record.addProperty("environmentalTemp", image.environmentalTemp);
+			record.addProperty("pathTemperature", image.pathTemperature);
+			record.addProperty("calibRangeMin", image.calibRangeMin);
+			record.addProperty("calibRangeMax", image.calibRangeMax);
+		}
+		return record;
+	}
+}
@@ -0,0 +1,133 @@
+/* irb
+ * IrbStatsCommand Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import de.labathome.irb.IrbDiagnostics;
+import de.labathome.irb.IrbDiagnosticsListener;
+import de.labathome.irb.IrbFile;
+import de.labathome.irb.IrbHistogram;
+import de.labathome.irb.IrbImage;
+import de.labathome.irb.IrbPixelStatistics;
+import eu.hoefel.ArrayToPNG;
+import eu.hoefel.PngEncoder;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+@Command(name = "stats", description = "Export the per-pixel mean, standard deviation, minimum, maximum and time of the maximum "
+		+ "over all video frames of a *.irb file, reading one frame at a time.")
+public class IrbStatsCommand implements Callable<Integer> {
+
+	@Parameters(index = "0", description = "The *.irb file to read.")
+	private String filename;
+
+	@Option(names = {"-o", "--output"}, description = "Prefix of the files to write; default: <file>.stats.")
+	private String output;
+
+	@Option(names = {"--png"}, description = "Also write the statistics as PNG images.")
+	private boolean writePng;
+
+	@Option(names = {"--histogram"}, description = "Also write the temperature histogram of the recording and the 1st, 50th and 99th percentile of each frame, "
+			+ "counted while accumulating the statistics.")
+	private boolean writeHistogram;
+
+	@Option(names = {"--bin-width"}, description = "Width of the histogram bins in K, covering the calibration range of the first frame; default: ${DEFAULT-VALUE}.")
+	private float binWidth = 0.1F;
+
+	@Option(names = {"--threads"}, description = "Number of threads to read frames with; default: number of cores.")
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	public Integer call() throws Exception {
+		IrbDiagnostics.setListener(IrbDiagnosticsListener.NONE);
+
+		final long startTime = System.nanoTime();
+		final String prefix = (output != null) ? output : filename + ".stats";
+		IrbPixelStatistics statistics;
+		try (IrbFile irbFile = IrbFile.open(filename)) {
+			if (writeHistogram) {
+				statistics = accumulateWithHistograms(irbFile, prefix);
+			} else {
+				statistics = irbFile.getPixelStatistics(numThreads);
+			}
+		}
+
+		statistics.exportData(prefix);
+		if (writePng) {
+			final int width = statistics.width;
+			final int height = statistics.height;
+			PngEncoder encoder = PngEncoder.DEFAULT;
+			ArrayToPNG.dumpAsPng(toCelsius(statistics.getMean()), width, height, null, null, prefix + ".mean.png", true, encoder);
+			ArrayToPNG.dumpAsPng(statistics.getStandardDeviation(), width, height, null, null, prefix + ".std.png", true, encoder);
+			ArrayToPNG.dumpAsPng(toCelsius(statistics.getMin()), width, height, null, null, prefix + ".min.png", true, encoder);
+			ArrayToPNG.dumpAsPng(toCelsius(statistics.getMax()), width, height, null, null, prefix + ".max.png", true, encoder);
+			ArrayToPNG.dumpAsPng(statistics.getRelativeMaxTime(), width, height, null, null, prefix + ".tmax.png", true, encoder);
+		}
+
+		System.out.printf("accumulated %d frames of %dx%d pixels in %.2f s into %s.*\n",
+				statistics.getCount(), statistics.width, statistics.height, (System.nanoTime() - startTime) / 1.0e9, prefix);
+		return 0;
+	}
+
+	/**
+	 * Accumulate the statistics and the histograms in a single pass over the frames:
+	 * the percentiles of each frame are written to {@code <prefix>.percentiles.dat} as soon as the frame is read,
+	 * the histogram of the whole recording to {@code <prefix>.histogram.dat} at the end.
+	 *
+	 * @param irbFile file to read the frames from
+	 * @param prefix prefix of the files to write
+	 * @return statistics of all frames
+	 * @throws Exception if a file cannot be written
+	 */
+	private IrbPixelStatistics accumulateWithHistograms(IrbFile irbFile, String prefix) throws Exception {
+		final IrbImage first = irbFile.getRawFrame(0);
+		final float min = first.calibRangeMin;
+		final int numBins = Math.max(1, (int) Math.ceil((first.calibRangeMax - min) / binWidth));
+		IrbHistogram recording = new IrbHistogram(min, min + numBins * binWidth, numBins);
+
+		IrbPixelStatistics statistics;
+		try (Writer w = new BufferedWriter(new FileWriter(prefix + ".percentiles.dat"))) {
+			w.write("# frame p1[degC] p50[degC] p99[degC]\n");
+			statistics = irbFile.getPixelStatistics(numThreads, recording, (histogram, frameIdx) -> {
+				final String line = String.format(Locale.ENGLISH, "%d %.2f %.2f %.2f\n", frameIdx,
+						histogram.percentile(1.0) - IrbImage.CELSIUS_OFFSET,
+						histogram.percentile(50.0) - IrbImage.CELSIUS_OFFSET,
+						histogram.percentile(99.0) - IrbImage.CELSIUS_OFFSET);
+				try {
+					synchronized (w) {
+						w.write(line);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("failed to write the percentiles of frame " + frameIdx, e);
+				}
+			});
+		}
+		recording.exportData(prefix + ".histogram.dat");
+
+		System.out.printf(Locale.ENGLISH, "recording: p1 = %.2f degC, p50 = %.2f degC, p99 = %.2f degC\n",
+				recording.percentile(1.0) - IrbImage.CELSIUS_OFFSET,
+				recording.percentile(50.0) - IrbImage.CELSIUS_OFFSET,
+				recording.percentile(99.0) - IrbImage.CELSIUS_OFFSET);
+		return statistics;
+	}
+
+	/**
+	 * @param kelvin temperatures in Kelvin; converted in place
+	 * @return the given array, converted to deg. Celsius
+	 */
+	private static float[] toCelsius(float[] kelvin) {
+		for (int i = 0; i < kelvin.length; ++i) {
+			kelvin[i] -= IrbImage.CELSIUS_OFFSET;
+		}
+		return kelvin;
+	}
+}
@@ -0,0 +1,85 @@
+/* irb
+ * IrbTraceCommand Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.labathome.irb.IrbDiagnostics;
+import de.labathome.irb.IrbDiagnosticsListener;
+import de.labathome.irb.IrbFile;
+import de.labathome.irb.IrbPixelTrace;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+@Command(name = "trace", description = "Export the temperature of single pixels or a region over all video frames of a *.irb file, "
+		+ "reading only these pixels from uncompressed frames.")
+public class IrbTraceCommand implements Callable<Integer> {
+
+	@Parameters(index = "0", description = "The *.irb file to read.")
+	private String filename;
+
+	@Option(names = {"-p", "--pixel"}, paramLabel = "x,y", description = "Pixel to trace; can be given multiple times.")
+	private List<String> pixels = new ArrayList<>();
+
+	@Option(names = {"-r", "--roi"}, paramLabel = "x,y,width,height", description = "Rectangular region to trace all pixels of.")
+	private String roi;
+
+	@Option(names = {"-o", "--output"}, description = "Text file to write the traces to; default: <file>.trace.dat.")
+	private String output;
+
+	public Integer call() throws Exception {
+		if (pixels.isEmpty() == (roi == null)) {
+			System.err.println("Specify either pixels (--pixel) or a region (--roi) to trace.");
+			return 2;
+		}
+
+		IrbDiagnostics.setListener(IrbDiagnosticsListener.NONE);
+
+		final long startTime = System.nanoTime();
+		IrbPixelTrace trace;
+		try (IrbFile irbFile = IrbFile.open(filename)) {
+			if (roi != null) {
+				final int[] region = parseInts(roi, 4);
+				trace = irbFile.getRegionTrace(region[0], region[1], region[2], region[3]);
+			} else {
+				int[] x = new int[pixels.size()];
+				int[] y = new int[pixels.size()];
+				for (int i = 0; i < pixels.size(); ++i) {
+					final int[] pixel = parseInts(pixels.get(i), 2);
+					x[i] = pixel[0];
+					y[i] = pixel[1];
+				}
+				trace = irbFile.getPixelTrace(x, y);
+			}
+		}
+
+		final String outputFilename = (output != null) ? output : filename + ".trace.dat";
+		trace.exportData(outputFilename);
+		System.out.printf("traced %d pixels over %d frames in %.2f s into %s\n",
+				trace.x.length, trace.times.length, (System.nanoTime() - startTime) / 1.0e9, outputFilename);
+		return 0;
+	}
+
+	/**
+	 * @param text comma-separated integers
+	 * @param count expected number of integers
+	 * @return parsed integers
+	 */
+	private static int[] parseInts(String text, int count) {
+		final String[] parts = text.split(",");
+		if (parts.length != count) {
+			throw new RuntimeException("expected " + count + " comma-separated integers, but got '" + text + "'");
+		}
+		int[] values = new int[count];
+		for (int i = 0; i < count; ++i) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,201 @@
+/* irb
+ * IrbDeltaDecoder Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decoder for the pixel data of compression type 2.
+ * The first pixel is stored as a 16-bit little-endian literal.
+ * All further pixels are stored as deltas to their predecessor,
+ * as MSB-first bit codes in a sequence of 16-bit little-endian words:
+ * <ul>
+ * <li>an 8-bit prefix below 192 is the delta token itself</li>
+ * <li>otherwise, the prefix and the following 11 bits form the delta token, biased by 192 * 2047</li>
+ * </ul>
+ * A token u stands for the delta u/2 if even and -(u-1)/2 if odd.
+ * The resulting values are temperatures in units of 0.01 K.
+ *
+ * The decoder reads the data in place, 64 bits at a time.
+ * Short codes, which make up most of a typical image, are resolved to their delta by a table lookup on the prefix.
+ * When decoding temperatures, their range and sum are tracked on the integer values in the same loop.
+ */
+final class IrbDeltaDecoder {
+
+	/** prefixes from this value on start an extended code */
+	private static final int EXTENDED_PREFIX = 192;
+
+	/** number of bits following the prefix in an extended code */
+	private static final int EXTENDED_BITS = 11;
+
+	/** length of an extended code in bits: the longest code */
+	private static final int MAX_CODE_LENGTH = 8 + EXTENDED_BITS;
+
+	/** value to subtract from an extended code to get its delta token */
+	private static final int EXTENDED_BIAS = EXTENDED_PREFIX * ((1 << EXTENDED_BITS) - 1);
+
+	/** [192] delta by prefix of a short code */
+	private static final int[] SHORT_DELTA = new int[EXTENDED_PREFIX];
+
+	static {
+		for (int prefix = 0; prefix < EXTENDED_PREFIX; ++prefix) {
+			SHORT_DELTA[prefix] = toDelta(prefix);
+		}
+	}
+
+	private IrbDeltaDecoder() { }
+
+	/**
+	 * Decode the pixel data of an image into either raw 16-bit values or temperatures in Kelvin.
+	 * The position of the buffer is set to the end of the pixel data afterwards.
+	 *
+	 * @param buf       buffer to read from; its byte order does not matter
+	 * @param offset    position of the pixel data in the buffer
+	 * @param size      size of the pixel data in bytes
+	 * @param numPixels number of pixels to decode
+	 * @param raw       if not null, raw 16-bit values are written into this array
+	 * @param pixels    if raw is null, temperatures in Kelvin are written into this array
+	 * @throws IllegalArgumentException if the pixel data ends before all pixels are decoded
+	 */
+	static void decode(ByteBuffer buf, int offset, int size, int numPixels, short[] raw, float[] pixels) {
+		decode(buf, offset, size, numPixels, raw, pixels, null, null, null);
+	}
+
+	/**
+	 * Decode the pixel data of an image into either raw 16-bit values or temperatures.
+	 * The position of the buffer is set to the end of the pixel data afterwards.
+	 *
+	 * @param buf       buffer to read from; its byte order does not matter
+	 * @param offset    position of the pixel data in the buffer
+	 * @param size      size of the pixel data in bytes
+	 * @param numPixels number of pixels to decode
+	 * @param raw       if not null, raw 16-bit values are written into this array
+	 * @param pixels    if raw is null, temperatures in Kelvin are written into this array
+	 * @param celsius   if not null and raw is null, temperatures in degree Celsius are written into this array
+	 * @param histogram if not null and raw is null, the temperatures in Kelvin are counted in this histogram
+	 * @param image     if not null and raw is null, the data range of this image is set from the temperatures
+	 * @throws IllegalArgumentException if the pixel data ends before all pixels are decoded
+	 */
+	static void decode(ByteBuffer buf, int offset, int size, int numPixels, short[] raw, float[] pixels,
+			float[] celsius, IrbHistogram histogram, IrbImage image) {
+		if (size < 2) {
+			throw new IllegalArgumentException("Unexpected end of stream while reading first pixel");
+		}
+
+		// getLong yields the bytes of the 16-bit words in stream order
+		final ByteBuffer data = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+		final int wordStart = offset + 2;
+		final int wordCount = (size - 2) / 2;
+
+		int value = (data.get(offset) & 0xFF) | ((data.get(offset + 1) & 0xFF) << 8);
+		if (raw != null) {
+			raw[0] = (short) value;
+		} else {
+			pixels[0] = value / 100.0F;
+			if (celsius != null) {
+				celsius[0] = pixels[0] - IrbImage.CELSIUS_OFFSET;
+			}
+			if (histogram != null) {
+				histogram.add(value / 100.0F);
+			}
+		}
+
+		// range and sum of the values in units of 0.01 K
+		int minValue = value;
+		int maxValue = value;
+		long sum = value;
+
+		// bits not yet decoded, aligned to the most significant bit;
+		// bits beyond the available ones are already the next bits of the stream or zero
+		long bits = 0;
+		int available = 0;
+
+		// index of the next word to append to the bits
+		int wordIdx = 0;
+
+		for (int i = 1; i < numPixels; ++i) {
+			if (available < MAX_CODE_LENGTH) {
+				final int numWords = (64 - available) >>> 4;
+				bits |= window(data, wordStart, wordIdx, wordCount) >>> available;
+				wordIdx += numWords;
+				available += numWords << 4;
+			}
+
+			final int prefix = (int) (bits >>> 56);
+			if (prefix < EXTENDED_PREFIX) {
+				value = (value + SHORT_DELTA[prefix]) & 0xFFFF;
+				bits <<= 8;
+				available -= 8;
+			} else {
+				final int token = (int) (bits >>> (64 - MAX_CODE_LENGTH)) - EXTENDED_BIAS;
+				value = (value + toDelta(token)) & 0xFFFF;
+				bits <<= MAX_CODE_LENGTH;
+				available -= MAX_CODE_LENGTH;
+			}
+
+			if (raw != null) {
+				raw[i] = (short) value;
+			} else {
+				pixels[i] = value / 100.0F;
+				if (celsius != null) {
+					celsius[i] = pixels[i] - IrbImage.CELSIUS_OFFSET;
+				}
+				minValue = Math.min(minValue, value);
+				maxValue = Math.max(maxValue, value);
+				sum += value;
+				if (histogram != null) {
+					histogram.add(value / 100.0F);
+				}
+			}
+		}
+
+		// zero words were decoded if the stream was too short
+		if (16L * wordIdx - available > 16L * wordCount) {
+			throw new IllegalArgumentException("Unexpected end of stream while decoding " + numPixels + " pixels");
+		}
+
+		if (raw == null && image != null) {
+			image.setDataRange(minValue / 100.0F, maxValue / 100.0F, sum / 100.0);
+		}
+
+		buf.position(offset + size);
+	}
+
+	/**
+	 * @param token delta token
+	 * @return delta: half the token if even, negative half the token if odd
+	 */
+	private static int toDelta(int token) {
+		final int sign = token & 1;
+		return ((token >>> 1) ^ -sign) + sign;
+	}
+
+	/**
+	 * @param data      big-endian buffer to read from
+	 * @param wordStart position of the first 16-bit word in the buffer
+	 * @param wordIdx   index of the first word to read
+	 * @param wordCount number of words in the stream
+	 * @return four words starting at the given index, the first one in the most significant bits; zero beyond the stream
+	 */
+	private static long window(ByteBuffer data, int wordStart, int wordIdx, int wordCount) {
+		if (wordIdx + 4 <= wordCount) {
+			// swap the bytes within each little-endian word
+			final long v = data.getLong(wordStart + 2 * wordIdx);
+			return ((v >>> 8) & 0x00FF00FF00FF00FFL) | ((v & 0x00FF00FF00FF00FFL) << 8);
+		}
+
+		long v = 0;
+		for (int k = wordIdx; k < wordIdx + 4; ++k) {
+			v <<= 16;
+			if (k < wordCount) {
+				final int position = wordStart + 2 * k;
+				v |= (data.get(position) & 0xFF) | ((data.get(position + 1) & 0xFF) << 8);
+			}
+		}
+		return v;
+	}
+}
@@ -0,0 +1,49 @@
+/* irb
+ * IrbDiagnostics Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+/**
+ * Routes the diagnostic messages emitted while parsing *.irb files to the installed listener.
+ * By default, all messages are ignored, so that parsing does no console I/O.
+ */
+public final class IrbDiagnostics {
+
+	private static volatile IrbDiagnosticsListener listener = IrbDiagnosticsListener.NONE;
+
+	private IrbDiagnostics() { }
+
+	/**
+	 * Install a listener for the diagnostic messages of all subsequent parsing.
+	 *
+	 * @param newListener listener to install; null to ignore all messages
+	 */
+	public static void setListener(IrbDiagnosticsListener newListener) {
+		listener = (newListener == null) ? IrbDiagnosticsListener.NONE : newListener;
+	}
+
+	/**
+	 * @return currently installed listener
+	 */
+	public static IrbDiagnosticsListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @return true if a listener other than {@link IrbDiagnosticsListener#NONE} is installed,
+	 *         i.e., if it is worth preparing the arguments of a message
+	 */
+	static boolean isEnabled() {
+		return listener != IrbDiagnosticsListener.NONE;
+	}
+
+	static void info(String format, Object... args) {
+		listener.info(format, args);
+	}
+
+	static void warning(String format, Object... args) {
+		listener.warning(format, args);
+	}
+}
@@ -0,0 +1,86 @@
+/* irb
+ * IrbDiagnosticsCounter Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts diagnostic messages, e.g., to report the number of warnings per ingested file,
+ * and optionally forwards them to another listener.
+ * Warnings are counted per format string, i.e., per kind of warning.
+ */
+public class IrbDiagnosticsCounter implements IrbDiagnosticsListener {
+
+	private final IrbDiagnosticsListener delegate;
+
+	private final AtomicLong infoCount = new AtomicLong();
+
+	private final AtomicLong warningCount = new AtomicLong();
+
+	private final Map<String, AtomicLong> warningCounts = new ConcurrentHashMap<>();
+
+	/** count messages without forwarding them */
+	public IrbDiagnosticsCounter() {
+		this(IrbDiagnosticsListener.NONE);
+	}
+
+	/**
+	 * @param delegate listener to forward all messages to
+	 */
+	public IrbDiagnosticsCounter(IrbDiagnosticsListener delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void info(String format, Object... args) {
+		infoCount.incrementAndGet();
+		delegate.info(format, args);
+	}
+
+	@Override
+	public void warning(String format, Object... args) {
+		warningCount.incrementAndGet();
+		warningCounts.computeIfAbsent(format, f -> new AtomicLong()).incrementAndGet();
+		delegate.warning(format, args);
+	}
+
+	/**
+	 * @return number of informational messages since creation or the last {@link #reset()}
+	 */
+	public long getInfoCount() {
+		return infoCount.get();
+	}
+
+	/**
+	 * @return number of warnings since creation or the last {@link #reset()}
+	 */
+	public long getWarningCount() {
+		return warningCount.get();
+	}
+
+	/**
+	 * @return number of warnings by format string, sorted by format string
+	 */
+	public Map<String, Long> getWarningCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : warningCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	/**
+	 * Reset all counters to zero.
+	 */
+	public void reset() {
+		infoCount.set(0);
+		warningCount.set(0);
+		warningCounts.clear();
+	}
+}
@@ -0,0 +1,55 @@
+/* irb
+ * IrbDiagnosticsListener Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+/**
+ * Receives the diagnostic messages emitted while parsing *.irb files.
+ * Messages are given as format string and arguments for {@link String#format(String, Object...)},
+ * so that no formatting work is done unless a listener actually uses the message.
+ * Listeners must be thread-safe, since files can be parsed from multiple threads at once.
+ *
+ * @see IrbDiagnostics#setListener(IrbDiagnosticsListener)
+ */
+public interface IrbDiagnosticsListener {
+
+	/** ignores all messages; the default */
+	public static final IrbDiagnosticsListener NONE = new IrbDiagnosticsListener() {
+		@Override
+		public void info(String format, Object... args) { }
+
+		@Override
+		public void warning(String format, Object... args) { }
+	};
+
+	/** prints all messages to {@link System#out} */
+	public static final IrbDiagnosticsListener STDOUT = new IrbDiagnosticsListener() {
+		@Override
+		public void info(String format, Object... args) {
+			System.out.println(String.format(format, args));
+		}
+
+		@Override
+		public void warning(String format, Object... args) {
+			System.out.println("WARNING: " + String.format(format, args));
+		}
+	};
+
+	/**
+	 * Informational message about the structure of the parsed file.
+	 *
+	 * @param format format string
+	 * @param args   arguments referenced by the format string
+	 */
+	public void info(String format, Object... args);
+
+	/**
+	 * Something unexpected was found in the parsed file, but parsing could continue.
+	 *
+	 * @param format format string
+	 * @param args   arguments referenced by the format string
+	 */
+	public void warning(String format, Object... args);
+}
@@ -5,6 +5,7 @@
 
 package de.labathome.irb;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -12,8 +13,21 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A reading class for the *.irb file format by InfraTec, inspired by
@@ -26,7 +40,7 @@ import java.util.List;
  * @author Jonathan Schilling (jonathan.schilling@mail.de)
  * @author Benjamin Schilling (benjamin.schilling33@gmail.com)
  */
-public class IrbFile {
+public class IrbFile implements Closeable {
 
 	public IrbFileHeader header;
 
@@ -40,6 +54,12 @@ public class IrbFile {
 	// video data
 	public List<IrbFile> frames;
 
+	/** locations of the video frames; only set if opened using {@link #open(String)} */
+	private IrbFrameIndex frameIndex;
+
+	/** file to decode video frames from on demand */
+	private IrbMappedFile mappedFile;
+
 	public static IrbFile fromFile(String filename) throws IOException {
 		if (!(new File(filename).exists())) {
 			throw new RuntimeException("File '" + filename + "' does not exists!");
@@ -48,10 +68,25 @@ public class IrbFile {
 		RandomAccessFile memoryFile = new RandomAccessFile(filename, "r");
 
 		long file_size = memoryFile.length();
-		System.out.println("file size: " + file_size);
+		IrbDiagnostics.info("file size: %d", file_size);
+
+		if (file_size > Integer.MAX_VALUE) {
+			memoryFile.close();
+			throw new RuntimeException("File '" + filename + "' is too large to be read at once (" + file_size + " bytes); use IrbFile.open() instead");
+		}
 
 		MappedByteBuffer buf = memoryFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file_size);
+		memoryFile.close();
+
+		try {
+			return readAll(buf);
+		} finally {
+			// all data is copied out of the mapped file by now
+			IrbMappedFile.unmap(buf);
+		}
+	}
 
+	private static IrbFile readAll(ByteBuffer buf) {
 		IrbFile irb = IrbFile.read(buf, false);
 
 		if (irb.header.fileType == IrbFileType.O_SAVE_IRB) {
@@ -65,7 +100,7 @@ public class IrbFile {
 			int frameCount = 0;
 			while (buf.remaining() > 0) {
 				if (frameCount > 0 && frameCount % 100 == 0) {
-					System.out.printf("already read %4d frames...\n", frameCount);
+					IrbDiagnostics.info("already read %4d frames...", frameCount);
 				}
 				IrbFile frame = IrbFile.read(buf, true);
 				irb.frames.add(frame);
@@ -74,12 +109,522 @@ public class IrbFile {
 			}
 		}
 
-		memoryFile.close();
-
 		return irb;
 	}
 
+	/**
+	 * Open a file for random access to its video frames.
+	 * In contrast to {@link #fromFile(String)}, only the headers of the video frames
+	 * are read to build an index of the frames.
+	 * The pixel data of a frame is decoded only when it is requested via {@link #getFrame(int)}.
+	 * The file is mapped in windows of {@link IrbMappedFile#DEFAULT_WINDOW_SIZE},
+	 * so files larger than 2 GB are supported.
+	 * The returned IrbFile can be shared between threads:
+	 * frames are decoded from independent views of a single mapping,
+	 * so any number of threads can call {@link #getFrame(int)} at the same time.
+	 * The file stays mapped until {@link #close()} is called;
+	 * all images returned are copied out of the mapping, so they stay valid afterwards.
+	 *
+	 * @param filename file to open
+	 * @return IrbFile with a frame index; {@link #frames} is not populated
+	 * @throws IOException if the file cannot be read
+	 */
+	public static IrbFile open(String filename) throws IOException {
+		return open(filename, IrbMappedFile.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Open a file for random access to its video frames.
+	 *
+	 * @param filename   file to open
+	 * @param windowSize size of the windows in which the file is mapped into memory
+	 * @return IrbFile with a frame index; {@link #frames} is not populated
+	 * @throws IOException if the file cannot be read
+	 * @see #open(String)
+	 */
+	public static IrbFile open(String filename, long windowSize) throws IOException {
+		IrbMappedFile file = new IrbMappedFile(filename, windowSize, IrbMappedFile.DEFAULT_MAX_WINDOWS);
+		try {
+			IrbDiagnostics.info("file size: %d", file.size());
+
+			// only the header block data at the start of the file is parsed as a whole
+			final long token = file.acquire();
+			final long dataEnd;
+			final long headSize;
+			final IrbFile irb;
+			try {
+				dataEnd = IrbFrameIndex.blockDataEnd(file, 0, false);
+				final boolean hasPreview = IrbFileHeader.fromBuffer(file.slice(0, 64)).fileType == IrbFileType.O_SAVE_IRB;
+				// preview image follows directly after the header block data
+				headSize = hasPreview ? dataEnd + IrbFrameIndex.uncompressedImageSize(file, dataEnd) : dataEnd;
+				if (headSize > Integer.MAX_VALUE) {
+					throw new RuntimeException("header block data too large: " + headSize + " bytes");
+				}
+				ByteBuffer buf = file.slice(0, (int) headSize);
+
+				irb = IrbFile.read(buf, false, false);
+
+				if (irb.header.fileType == IrbFileType.O_SAVE_IRB) {
+					// preview image
+					IrbImage frontMatter = new IrbImage(buf, 0, 0, false);
+					irb.images.add(frontMatter);
+				}
+			} finally {
+				file.release(token);
+			}
+			irb.mappedFile = file;
+
+			if (irb.header.fileType == IrbFileType.O_SAVE_IRB) {
+				irb.frameIndex = IrbFrameIndex.ofAppendedFrames(file, headSize);
+			} else {
+				boolean hasVideoFrames = file.size() > dataEnd && irb.header.fileType == IrbFileType.VARIOCAM;
+				irb.frameIndex = IrbFrameIndex.ofImageBlocks(file, irb.headerBlocks, irb.headers, hasVideoFrames);
+			}
+
+			return irb;
+		} catch (Throwable e) {
+			// malformed files are common in large archives: do not leak their file handle and mappings
+			try {
+				file.close();
+			} catch (IOException closeFailure) {
+				e.addSuppressed(closeFailure);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of video frames; a single image is counted as one frame
+	 */
+	public int getFrameCount() {
+		checkFrameIndex();
+		return frameIndex.size();
+	}
+
+	/**
+	 * Decode a single video frame.
+	 * For oSaveIRB files, these are the frames appended after the front matter image.
+	 * For all other files, these are the IMAGE blocks of the file, followed by the video frames (if any).
+	 *
+	 * @param frameIdx 0-based frame index
+	 * @return decoded image of the requested frame
+	 */
+	public IrbImage getFrame(int frameIdx) {
+		checkFrameIndex();
+		final int size = frameIndex.size(frameIdx);
+		final long token = mappedFile.acquire();
+		try {
+			ByteBuffer buf = mappedFile.slice(frameIndex.offset(frameIdx), size);
+			return IrbImage.fromBuffer(buf, 0, size, false);
+		} finally {
+			mappedFile.release(token);
+		}
+	}
+
+	/**
+	 * Decode a single video frame, touching each pixel only once.
+	 *
+	 * @param frameIdx      0-based frame index
+	 * @param celsiusPixels if not null, [height * width] array to write the temperatures in degree Celsius into
+	 * @param histogram     if not null, the temperatures of all pixels in Kelvin are counted in this histogram
+	 * @return decoded image of the requested frame
+	 * @see IrbImage#fromBuffer(ByteBuffer, int, int, float[], IrbHistogram)
+	 */
+	public IrbImage getFrame(int frameIdx, float[] celsiusPixels, IrbHistogram histogram) {
+		checkFrameIndex();
+		final int size = frameIndex.size(frameIdx);
+		final long token = mappedFile.acquire();
+		try {
+			ByteBuffer buf = mappedFile.slice(frameIndex.offset(frameIdx), size);
+			return IrbImage.fromBuffer(buf, 0, size, celsiusPixels, histogram);
+		} finally {
+			mappedFile.release(token);
+		}
+	}
+
+	/**
+	 * Read the header, palette and metadata of a single video frame, but no pixel data,
+	 * e.g. to get the size of the frame before decoding it.
+	 *
+	 * @param frameIdx 0-based frame index
+	 * @return image of the requested frame without pixels
+	 */
+	public IrbImage getFrameMetadata(int frameIdx) {
+		checkFrameIndex();
+		final long token = mappedFile.acquire();
+		try {
+			ByteBuffer buf = mappedFile.slice(frameIndex.offset(frameIdx), IrbFrameIndex.IMAGE_METADATA_SIZE);
+			return IrbImage.fromBuffer(buf, 0, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+		} finally {
+			mappedFile.release(token);
+		}
+	}
+
+	/**
+	 * Decode all video frames in parallel on the given number of threads.
+	 *
+	 * @param numThreads number of threads to decode frames on
+	 * @return decoded images of all frames, in the order of the frames in the file
+	 * @see #getFrames(int, int, ExecutorService)
+	 */
+	public List<IrbImage> getFrames(int numThreads) {
+		checkFrameIndex();
+		if (numThreads < 1) {
+			throw new RuntimeException("need at least one thread, but numThreads=" + numThreads);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			return getFrames(0, frameIndex.size(), executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Decode a range of video frames in parallel.
+	 * The frame boundaries are known from the frame index,
+	 * so each frame is decoded by a separate task from its own view of the mapped file.
+	 *
+	 * @param fromIdx  0-based index of the first frame to decode (inclusive)
+	 * @param toIdx    0-based index of the last frame to decode (exclusive)
+	 * @param executor executor to run the decoding tasks on
+	 * @return decoded images of the requested frames, in the order of the frames in the file
+	 */
+	public List<IrbImage> getFrames(int fromIdx, int toIdx, ExecutorService executor) {
+		checkFrameIndex();
+		if (fromIdx < 0 || toIdx > frameIndex.size() || fromIdx > toIdx) {
+			throw new IndexOutOfBoundsException("frame range [" + fromIdx + ", " + toIdx + ") out of range [0, " + frameIndex.size() + ")");
+		}
+
+		List<Future<IrbImage>> futures = new ArrayList<>(toIdx - fromIdx);
+		for (int frameIdx = fromIdx; frameIdx < toIdx; ++frameIdx) {
+			final int idx = frameIdx;
+			futures.add(executor.submit(() -> getFrame(idx)));
+		}
+
+		List<IrbImage> frames = new ArrayList<>(futures.size());
+		try {
+			for (int i = 0; i < futures.size(); ++i) {
+				try {
+					frames.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					throw new RuntimeException("failed to decode frame " + (fromIdx + i), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while decoding frames", e);
+		} finally {
+			// nothing left to wait for in case of an error
+			for (Future<IrbImage> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * Iterate over all video frames, decoding each frame only when it is requested.
+	 * At most one frame is held in memory at a time.
+	 *
+	 * @return iterator over the decoded images of all frames
+	 */
+	public Iterator<IrbImage> frameIterator() {
+		return Spliterators.iterator(frameSpliterator());
+	}
+
+	/**
+	 * @return spliterator over all video frames, decoding each frame only when it is consumed
+	 */
+	public Spliterator<IrbImage> frameSpliterator() {
+		checkFrameIndex();
+		return new IrbFrameSpliterator(this, 0, frameIndex.size(), false);
+	}
+
+	/**
+	 * Stream all video frames, decoding each frame only when it is consumed.
+	 * Parallel streams decode disjoint ranges of frames concurrently.
+	 *
+	 * @param parallel if true, a parallel stream is returned
+	 * @return stream of the decoded images of all frames, in the order of the frames in the file
+	 */
+	public Stream<IrbImage> frameStream(boolean parallel) {
+		return StreamSupport.stream(frameSpliterator(), parallel);
+	}
+
+	/**
+	 * Stream all video frames, keeping only their raw pixel values.
+	 *
+	 * @param parallel if true, a parallel stream is returned
+	 * @return stream of the images of all frames as returned by {@link #getRawFrame(int)}
+	 */
+	public Stream<IrbImage> rawFrameStream(boolean parallel) {
+		checkFrameIndex();
+		return StreamSupport.stream(new IrbFrameSpliterator(this, 0, frameIndex.size(), true), parallel);
+	}
+
+	/**
+	 * Read a single video frame, but only keep its raw pixel values.
+	 * The raw pixel values of uncompressed frames are copied out of the mapped file,
+	 * so the image stays valid after {@link #close()}.
+	 *
+	 * @param frameIdx 0-based frame index
+	 * @return image of the requested frame with {@link IrbImage#rawPixels} instead of {@link IrbImage#pixels}
+	 * @see IrbImage#fromBufferRaw(ByteBuffer, int, int)
+	 */
+	public IrbImage getRawFrame(int frameIdx) {
+		checkFrameIndex();
+		final long token = mappedFile.acquire();
+		try {
+			return readRawFrame(frameIdx).detach();
+		} finally {
+			mappedFile.release(token);
+		}
+	}
+
+	/**
+	 * Read the raw pixel values of a single video frame without copying them;
+	 * the mapped file needs to be acquired by the caller as long as the image is in use.
+	 */
+	private IrbImage readRawFrame(int frameIdx) {
+		final int size = frameIndex.size(frameIdx);
+		ByteBuffer buf = mappedFile.slice(frameIndex.offset(frameIdx), size);
+		return IrbImage.fromBufferRaw(buf, 0, size);
+	}
+
+	/**
+	 * Decode only some regions of a single video frame.
+	 *
+	 * @param frameIdx 0-based frame index
+	 * @param regions  regions to decode
+	 * @return decoded regions with their pixels, minimum, maximum and mean, in the order of the given regions
+	 * @see IrbRegion#fromBuffer(ByteBuffer, int, int, List)
+	 */
+	public List<IrbRegion> getRegions(int frameIdx, List<IrbRegion> regions) {
+		checkFrameIndex();
+		final int size = frameIndex.size(frameIdx);
+		final long token = mappedFile.acquire();
+		try {
+			ByteBuffer buf = mappedFile.slice(frameIndex.offset(frameIdx), size);
+			return IrbRegion.fromBuffer(buf, 0, size, regions);
+		} finally {
+			mappedFile.release(token);
+		}
+	}
+
+	/**
+	 * Read the temperature of some pixels in all video frames.
+	 * For uncompressed frames, only the metadata and the requested pixels of each frame are read;
+	 * compressed frames are decoded as a whole.
+	 *
+	 * @param x column indices of the pixels
+	 * @param y row indices of the pixels
+	 * @return temperature of the given pixels in all frames
+	 */
+	public IrbPixelTrace getPixelTrace(int[] x, int[] y) {
+		checkFrameIndex();
+		return IrbPixelTrace.read(mappedFile, frameIndex, x, y);
+	}
+
+	/**
+	 * Read the temperature of all pixels of a rectangular region in all video frames.
+	 *
+	 * @param x0     column index of the first pixel of the region
+	 * @param y0     row index of the first pixel of the region
+	 * @param width  number of columns of the region
+	 * @param height number of rows of the region
+	 * @return temperature of the pixels of the region in all frames, in row-major order
+	 * @see #getPixelTrace(int[], int[])
+	 */
+	public IrbPixelTrace getRegionTrace(int x0, int y0, int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new RuntimeException("region must not be empty, but is " + width + "x" + height);
+		}
+		int[] x = new int[width * height];
+		int[] y = new int[width * height];
+		for (int j = 0; j < height; ++j) {
+			for (int i = 0; i < width; ++i) {
+				x[j * width + i] = x0 + i;
+				y[j * width + i] = y0 + j;
+			}
+		}
+		return getPixelTrace(x, y);
+	}
+
+	/**
+	 * Accumulate per-pixel statistics over all video frames in parallel on the given number of threads.
+	 * Each thread accumulates a contiguous range of frames; the partial results are merged afterwards,
+	 * so the memory needed is proportional to the number of pixels times the number of threads.
+	 *
+	 * @param numThreads number of threads to read frames on
+	 * @return statistics of all frames
+	 * @see #getPixelStatistics(int, int)
+	 */
+	public IrbPixelStatistics getPixelStatistics(int numThreads) {
+		return getPixelStatistics(numThreads, null, null);
+	}
+
+	/**
+	 * Accumulate per-pixel statistics and temperature histograms over all video frames in a single pass,
+	 * in parallel on the given number of threads.
+	 *
+	 * @param numThreads      number of threads to read frames on
+	 * @param histogram       if not null, the temperatures of all frames are counted in this histogram
+	 * @param frameHistograms if not null, called with the histogram of each frame and its index as soon as the frame is read,
+	 *                        concurrently from all threads; the histograms have the bins of {@code histogram}, which must not be null then
+	 * @return statistics of all frames
+	 * @see #getPixelStatistics(int, int, IrbHistogram, ObjIntConsumer)
+	 */
+	public IrbPixelStatistics getPixelStatistics(int numThreads, IrbHistogram histogram, ObjIntConsumer<IrbHistogram> frameHistograms) {
+		List<IrbPixelStatistics> partials = mapFrameRanges(numThreads, (fromIdx, toIdx) -> {
+			if (histogram == null) {
+				return getPixelStatistics(fromIdx, toIdx, null, frameHistograms);
+			}
+
+			// count into a histogram per thread and merge it once its range is done
+			IrbHistogram rangeHistogram = new IrbHistogram(histogram);
+			IrbPixelStatistics statistics = getPixelStatistics(fromIdx, toIdx, rangeHistogram, frameHistograms);
+			synchronized (histogram) {
+				histogram.merge(rangeHistogram);
+			}
+			return statistics;
+		});
+		IrbPixelStatistics statistics = partials.get(0);
+		for (int i = 1; i < partials.size(); ++i) {
+			statistics.merge(partials.get(i));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Accumulate per-pixel statistics over a range of video frames.
+	 * The raw pixel values of the frames are read one at a time,
+	 * so uncompressed frames are converted straight from the mapped file without copying them.
+	 *
+	 * @param fromIdx 0-based index of the first frame (inclusive)
+	 * @param toIdx   0-based index of the last frame (exclusive)
+	 * @return statistics of the requested frames; can be merged with those of other ranges
+	 */
+	public IrbPixelStatistics getPixelStatistics(int fromIdx, int toIdx) {
+		return getPixelStatistics(fromIdx, toIdx, null, null);
+	}
+
+	/**
+	 * Accumulate per-pixel statistics and temperature histograms over a range of video frames,
+	 * reading each frame only once.
+	 *
+	 * @param fromIdx         0-based index of the first frame (inclusive)
+	 * @param toIdx           0-based index of the last frame (exclusive)
+	 * @param histogram       if not null, the temperatures of the requested frames are counted in this histogram
+	 * @param frameHistograms if not null, called with the histogram of each frame and its index, in the order of the frames;
+	 *                        the histograms have the bins of {@code histogram}, which must not be null then
+	 * @return statistics of the requested frames; can be merged with those of other ranges
+	 */
+	public IrbPixelStatistics getPixelStatistics(int fromIdx, int toIdx, IrbHistogram histogram, ObjIntConsumer<IrbHistogram> frameHistograms) {
+		checkFrameIndex();
+		if (fromIdx < 0 || toIdx > frameIndex.size() || fromIdx >= toIdx) {
+			throw new IndexOutOfBoundsException("frame range [" + fromIdx + ", " + toIdx + ") empty or out of range [0, " + frameIndex.size() + ")");
+		}
+		if (frameHistograms != null && histogram == null) {
+			throw new RuntimeException("need a histogram to take the bins of the frame histograms from");
+		}
+
+		IrbPixelStatistics statistics = null;
+		for (int frameIdx = fromIdx; frameIdx < toIdx; ++frameIdx) {
+			IrbHistogram frameHistogram = null;
+			final long token = mappedFile.acquire();
+			try {
+				IrbImage frame = readRawFrame(frameIdx);
+				if (statistics == null) {
+					statistics = new IrbPixelStatistics(frame.width, frame.height);
+				}
+				statistics.add(frame);
+
+				if (frameHistograms != null) {
+					frameHistogram = new IrbHistogram(histogram).add(frame);
+					histogram.merge(frameHistogram);
+				} else if (histogram != null) {
+					histogram.add(frame);
+				}
+			} finally {
+				mappedFile.release(token);
+			}
+
+			if (frameHistogram != null) {
+				frameHistograms.accept(frameHistogram, frameIdx);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Split all video frames into one contiguous range per thread and process the ranges in parallel.
+	 *
+	 * @param numThreads number of threads
+	 * @param task       called with the first (inclusive) and last (exclusive) index of each non-empty range
+	 * @return results of all ranges, in the order of the frames in the file
+	 */
+	private <T> List<T> mapFrameRanges(int numThreads, BiFunction<Integer, Integer, T> task) {
+		checkFrameIndex();
+		if (numThreads < 1) {
+			throw new RuntimeException("need at least one thread, but numThreads=" + numThreads);
+		}
+		final int numFrames = frameIndex.size();
+		final int numRanges = Math.max(1, Math.min(numThreads, numFrames));
+		if (numRanges == 1) {
+			return Collections.singletonList(task.apply(0, numFrames));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numRanges);
+		try {
+			List<Future<T>> futures = new ArrayList<>(numRanges);
+			for (int range = 0; range < numRanges; ++range) {
+				final int fromIdx = (int) ((long) numFrames * range / numRanges);
+				final int toIdx = (int) ((long) numFrames * (range + 1) / numRanges);
+				futures.add(executor.submit(() -> task.apply(fromIdx, toIdx)));
+			}
+
+			List<T> results = new ArrayList<>(numRanges);
+			for (int range = 0; range < numRanges; ++range) {
+				try {
+					results.add(futures.get(range).get());
+				} catch (ExecutionException e) {
+					throw new RuntimeException("failed to process frame range " + range + " of " + numRanges, e.getCause());
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while processing frames", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return locations of the video frames in the file
+	 */
+	public IrbFrameIndex getFrameIndex() {
+		checkFrameIndex();
+		return frameIndex;
+	}
+
+	private void checkFrameIndex() {
+		if (frameIndex == null) {
+			throw new RuntimeException("no frame index available; use IrbFile.open() to get random access to frames");
+		}
+	}
+
 	public static IrbFile read(ByteBuffer buf, boolean isVideoFrameFirstRead) {
+		return read(buf, isVideoFrameFirstRead, true);
+	}
+
+	/**
+	 * @param buf buffer to read from
+	 * @param isVideoFrameFirstRead true if reading an oSaveIRB video frame
+	 * @param decodeVideoFrames if false, VARIOCAM video frames following the header block data are not decoded
+	 */
+	private static IrbFile read(ByteBuffer buf, boolean isVideoFrameFirstRead, boolean decodeVideoFrames) {
 		final int initialPosition = buf.position();
 
 		// NOTE: in irbis-file-format, the routines are named readIntBE,
@@ -99,20 +644,20 @@ public class IrbFile {
 		}
 
 		// sort header blocks by appearance in the file
-		irb.headerBlocks.sort((IrbHeaderBlock a, IrbHeaderBlock b) -> { return a.offset - b.offset; });
+		irb.headerBlocks.sort((IrbHeaderBlock a, IrbHeaderBlock b) -> { return Long.compare(a.offset, b.offset); });
 
 		// print in order of appearance in the file
 		// and check if header block data is continuous and spans the whole buffer size
-		int lastDataStart = irb.header.blockOffset + irb.header.blockCount * 32;
+		long lastDataStart = irb.header.blockOffset + irb.header.blockCount * 32;
 		for (IrbHeaderBlock headerBlock: irb.headerBlocks) {
-			System.out.printf("# IrbHeaderBlock blockType=%s [%d] frameIndex=%d offset=%d size=%d\n",
+			IrbDiagnostics.info("# IrbHeaderBlock blockType=%s [%d] frameIndex=%d offset=%d size=%d",
 					headerBlock.blockType.toString(), headerBlock.blockType.value(),
 					headerBlock.frameIndex, headerBlock.offset, headerBlock.size);
 
 			// EMPTY header block is expected to have offset=0, size=0 -> ignore that case
 			if (headerBlock.offset != lastDataStart &&
 					!(headerBlock.blockType == IrbBlockType.EMPTY && headerBlock.offset == 0 && headerBlock.size == 0)) {
-				System.out.printf("  WARNING: block data does not line up: expected offset=%d, but read pointer is at %d\n",
+				IrbDiagnostics.warning("block data does not line up: expected offset=%d, but read pointer is at %d",
 						headerBlock.offset, lastDataStart);
 			}
 
@@ -120,7 +665,7 @@ public class IrbFile {
 			lastDataStart += headerBlock.size;
 		}
 		if (lastDataStart != buf.capacity()) {
-			System.out.printf("  WARNING: mismatch between declared blocks and file size: declared end at %d, actual file size %d\n",
+			IrbDiagnostics.warning("mismatch between declared blocks and file size: declared end at %d, actual file size %d",
 					lastDataStart, buf.capacity());
 		}
 
@@ -133,39 +678,39 @@ public class IrbFile {
 			switch (block.blockType) {
 			case EMPTY: // 0
 				if (block.offset != 0 || block.size != 0) {
-					System.out.println("non-empty EMPTY block? offset=" + block.offset + " size=" + block.size);
+					IrbDiagnostics.warning("non-empty EMPTY block? offset=%d size=%d", block.offset, block.size);
 				}
 				// ignore
 				break;
 			case IMAGE: // 1
-				IrbImage image = IrbImage.fromBuffer(buf, initialPosition + block.offset, block.size, isVideoFrameFirstRead);
+				IrbImage image = IrbImage.fromBuffer(buf, initialPosition + (int) block.offset, (int) block.size, isVideoFrameFirstRead);
 				if (!isVideoFrameFirstRead) {
 					irb.images.add(image);
 				}
 				break;
 			case PREVIEW: // 2
-				IrbPreview preview = IrbPreview.fromBuffer(buf, initialPosition + block.offset, block.size);
+				IrbPreview preview = IrbPreview.fromBuffer(buf, initialPosition + (int) block.offset, (int) block.size);
 				irb.previews.add(preview);
 				break;
 			case TEXT_INFO: // 3
-				IrbTextInfo textInfo = IrbTextInfo.fromBuffer(buf, initialPosition + block.offset, block.size);
+				IrbTextInfo textInfo = IrbTextInfo.fromBuffer(buf, initialPosition + (int) block.offset, (int) block.size);
 				irb.textInfos.add(textInfo);
 				break;
 			case FRAME_HEADER: // 4
-				IrbFrameHeader header = IrbFrameHeader.fromBuffer(buf, initialPosition + block.offset, block.size);
+				IrbFrameHeader header = IrbFrameHeader.fromBuffer(buf, initialPosition + (int) block.offset, (int) block.size);
 				irb.headers.add(header);
 				break;
 			case TODO_MYSTERY_5: // 5
-				System.out.println("TODO: mystery block 5 - ignored for now");
-				buf.position(initialPosition + block.offset + block.size);
+				IrbDiagnostics.info("TODO: mystery block 5 - ignored for now");
+				buf.position(initialPosition + (int) (block.offset + block.size));
 				break;
 			case TODO_MYSTERY_6: // 6
-				System.out.println("TODO: mystery block 6 - ignored for now");
-				buf.position(initialPosition + block.offset + block.size);
+				IrbDiagnostics.info("TODO: mystery block 6 - ignored for now");
+				buf.position(initialPosition + (int) (block.offset + block.size));
 				break;
 			case AUDIO: // 7
-				System.out.println("TODO: AUDIO block - ignored for now");
-				buf.position(initialPosition + block.offset + block.size);
+				IrbDiagnostics.info("TODO: AUDIO block - ignored for now");
+				buf.position(initialPosition + (int) (block.offset + block.size));
 				break;
 			default:
 				throw new RuntimeException("block not implemented yet: " + block.blockType);
@@ -191,13 +736,13 @@ public class IrbFile {
 				// now comes the actual frame image
 				IrbImage image = new IrbImage(buf, 0, 0, /*isVideoFrameFirstRead=*/false);
 				irb.images.add(image);
-			} else if (irb.header.fileType == IrbFileType.VARIOCAM) {
-				System.out.println("trying to interpret as VARIOCAM video...");
+			} else if (irb.header.fileType == IrbFileType.VARIOCAM && decodeVideoFrames) {
+				IrbDiagnostics.info("trying to interpret as VARIOCAM video...");
 
 				IrbFrameHeader last_frame_header = irb.headers.get(irb.headers.size() - 1);
 				while (last_frame_header.expected_next_offset != last_frame_header.offset) {
 					// read current frame
-					IrbImage next_frame = IrbImage.fromBuffer(buf, last_frame_header.offset, last_frame_header.size, false);
+					IrbImage next_frame = IrbImage.fromBuffer(buf, (int) last_frame_header.offset, (int) last_frame_header.size, false);
 					irb.images.add(next_frame);
 
 					// expect another frame header after current frame
@@ -210,6 +755,20 @@ public class IrbFile {
 		return irb;
 	}
 
+	/**
+	 * Unmap a file opened via {@link #open(String)} and release its file handle; no frames can be read afterwards.
+	 * The mapping is released right away, or, if other threads are still reading frames,
+	 * as soon as they are done with their current frame; they fail to read further frames.
+	 * All images read before remain valid, since they are copied out of the mapping.
+	 * Does nothing for a file read via {@link #fromFile(String)}.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (mappedFile != null) {
+			mappedFile.close();
+		}
+	}
+
 	public IrbFileType fileType() {
 		return header.fileType;
 	}
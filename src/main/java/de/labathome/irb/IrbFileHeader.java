@@ -58,7 +58,7 @@ public class IrbFileHeader {
 		buf.get(dummy);
 		// 64
 
-		System.out.printf("# IrbFileHeader: fileType=%s blockOffset=%d blockCount=%d\n",
+		IrbDiagnostics.info("# IrbFileHeader: fileType=%s blockOffset=%d blockCount=%d",
 				header.fileType.toString(), header.blockOffset, header.blockCount);
 
 		if (buf.position() - initialPosition != 64) {
@@ -0,0 +1,114 @@
+/* irb
+ * IrbFileInfo Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Header and image metadata of an *.irb file, read without decoding any pixel data.
+ * Only the file header, the header blocks and the metadata of the images are read,
+ * using positional reads of a few KB instead of mapping the whole file,
+ * which makes this suitable for cataloguing large numbers of files.
+ * The images in here only have their header, palette and metadata set;
+ * {@link IrbImage#pixels} and {@link IrbImage#rawPixels} are null.
+ */
+public class IrbFileInfo {
+
+	public String filename;
+
+	/** size of the file in bytes */
+	public long fileSize;
+
+	public IrbFileHeader header;
+
+	/** header blocks of the file, sorted by offset */
+	public List<IrbHeaderBlock> headerBlocks;
+
+	/** metadata of the first image in the file: the first IMAGE block or the front matter image of an oSaveIRB file */
+	public IrbImage image;
+
+	/** locations of the video frames, as in {@link IrbFile#getFrameIndex()}; only set if frames were scanned */
+	public IrbFrameIndex frameIndex;
+
+	/** metadata of all video frames, in the order of {@link IrbFile#getFrame(int)}; only set if frames were scanned */
+	public List<IrbImage> frames;
+
+	private IrbFileInfo() { }
+
+	/**
+	 * Read the header and image metadata of a file.
+	 *
+	 * @param filename file to read
+	 * @param scanFrames if true, the frame headers are followed through the file to read the metadata of every video frame
+	 * @return header and metadata of the given file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static IrbFileInfo scan(String filename, boolean scanFrames) throws IOException {
+		try (IrbPositionalFile file = new IrbPositionalFile(filename)) {
+			IrbFileInfo info = new IrbFileInfo();
+			info.filename = filename;
+			info.fileSize = file.size();
+
+			info.header = IrbFileHeader.fromBuffer(file.slice(0, 64));
+
+			// read header blocks
+			info.headerBlocks = new LinkedList<>();
+			ByteBuffer buf = file.slice(info.header.blockOffset, info.header.blockCount * 32);
+			for (int i = 0; i < info.header.blockCount; ++i) {
+				info.headerBlocks.add(IrbHeaderBlock.fromBuffer(buf));
+			}
+			info.headerBlocks.sort((IrbHeaderBlock a, IrbHeaderBlock b) -> { return Long.compare(a.offset, b.offset); });
+
+			// only the blocks needed to locate the images are read
+			List<IrbFrameHeader> headers = new LinkedList<>();
+			for (IrbHeaderBlock block : info.headerBlocks) {
+				if (block.blockType == IrbBlockType.IMAGE && info.image == null) {
+					info.image = readMetadata(file, block.offset);
+				} else if (block.blockType == IrbBlockType.FRAME_HEADER) {
+					headers.add(IrbFrameHeader.fromBuffer(file.slice(block.offset, (int) block.size), 0, (int) block.size));
+				}
+			}
+
+			final long dataEnd = IrbFrameIndex.blockDataEnd(file, 0, false);
+			final boolean isOSaveIrb = info.header.fileType == IrbFileType.O_SAVE_IRB;
+			if (isOSaveIrb) {
+				// front matter image follows directly after the header block data
+				info.image = readMetadata(file, dataEnd);
+			}
+
+			if (scanFrames) {
+				if (isOSaveIrb) {
+					info.frameIndex = IrbFrameIndex.ofAppendedFrames(file, dataEnd + IrbFrameIndex.uncompressedImageSize(file, dataEnd));
+				} else {
+					boolean hasVideoFrames = file.size() > dataEnd && info.header.fileType == IrbFileType.VARIOCAM;
+					info.frameIndex = IrbFrameIndex.ofImageBlocks(file, info.headerBlocks, headers, hasVideoFrames);
+				}
+
+				info.frames = new ArrayList<>(info.frameIndex.size());
+				for (int frameIdx = 0; frameIdx < info.frameIndex.size(); ++frameIdx) {
+					info.frames.add(readMetadata(file, info.frameIndex.offset(frameIdx)));
+				}
+			}
+
+			return info;
+		}
+	}
+
+	/**
+	 * Read header, palette and metadata of an IrbImage, but no pixel data.
+	 *
+	 * @param file file to read from
+	 * @param offset offset in file at which the IrbImage starts
+	 * @return image with metadata only
+	 */
+	private static IrbImage readMetadata(IrbRandomAccess file, long offset) {
+		return IrbImage.fromBuffer(file.slice(offset, IrbFrameIndex.IMAGE_METADATA_SIZE), 0, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+	}
+}
@@ -25,6 +25,11 @@ public enum IrbFileType {
 
 	private String content;
 
+	/** @return the 8 identifying characters, as found twice in the file header */
+	String content() {
+		return content;
+	}
+
 	public static IrbFileType fromString(String content) {
 		for (IrbFileType t : IrbFileType.values()) {
 			if (t.content.equals(content)) {
@@ -22,13 +22,13 @@ public class IrbFrameHeader {
 	@Expose(serialize = true)
 	int frame_counter;
 
-	/** offset in file at which IrbImage of this frame starts */
+	/** offset in file at which IrbImage of this frame starts; unsigned 32-bit integer, i.e., modulo 4 GB */
 	@Expose(serialize = true)
-	int offset;
+	long offset;
 
 	/** size of IrbImage of this frame */
 	@Expose(serialize = true)
-	int size;
+	long size;
 
 	/** == 0 */
 	@Expose(serialize = true)
@@ -56,11 +56,11 @@ public class IrbFrameHeader {
 
 	/** ??? */
 	@Expose(serialize = true)
-	int expected_next_offset;
+	long expected_next_offset;
 
 	/** ??? */
 	@Expose(serialize = true)
-	int size_2;
+	long size_2;
 
 	/** == 0 */
 	@Expose(serialize = true)
@@ -92,10 +92,10 @@ public class IrbFrameHeader {
 		frame_header.frame_counter = buf.getInt();
 		// 12
 
-		frame_header.offset = buf.getInt();
+		frame_header.offset = Integer.toUnsignedLong(buf.getInt());
 		// 16
 
-		frame_header.size = buf.getInt();
+		frame_header.size = Integer.toUnsignedLong(buf.getInt());
 		// 20
 
 		frame_header.bitfield2 = buf.getInt();
@@ -116,10 +116,10 @@ public class IrbFrameHeader {
 		frame_header.frame_counter_2 = buf.getInt();
 		// 44
 
-		frame_header.expected_next_offset = buf.getInt();
+		frame_header.expected_next_offset = Integer.toUnsignedLong(buf.getInt());
 		// 48
 
-		frame_header.size_2 = buf.getInt();
+		frame_header.size_2 = Integer.toUnsignedLong(buf.getInt());
 		// 52
 
 		frame_header.bitfield7 = buf.getInt();
@@ -131,7 +131,7 @@ public class IrbFrameHeader {
 		frame_header.bitfield9 = buf.getInt();
 		// 64
 
-		System.out.printf("# IrbFrameHeader frame_counter=%d offset=%d size=%d\n",
+		IrbDiagnostics.info("# IrbFrameHeader frame_counter=%d offset=%d size=%d",
 				frame_header.frame_counter, frame_header.offset, frame_header.size);
 
 		if (buf.position() - initial_position != 64) {
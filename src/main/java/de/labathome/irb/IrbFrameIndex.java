@@ -0,0 +1,233 @@
+/* irb
+ * IrbFrameIndex Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Locations of the video frames in an *.irb file.
+ * The index is built in a single pass over the file header, the header blocks and the frame headers;
+ * no pixel data is decoded while doing so.
+ * Each entry denotes the offset and size of the IrbImage (header, palette, metadata and raw data) of one frame.
+ */
+public class IrbFrameIndex {
+
+	/** size of IrbImage header (60 bytes), palette (1024 bytes) and metadata (644 bytes) */
+	static final int IMAGE_METADATA_SIZE = 60 + 1024 + 644;
+
+	/** offset in file at which the IrbImage of each frame starts */
+	private long[] offsets = new long[16];
+
+	/** size of the IrbImage of each frame */
+	private int[] sizes = new int[16];
+
+	/** number of frames in this index */
+	private int count;
+
+	IrbFrameIndex() { }
+
+	/**
+	 * @return number of frames in this index
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param frameIdx 0-based frame index
+	 * @return offset in file at which the IrbImage of the given frame starts
+	 */
+	public long offset(int frameIdx) {
+		checkFrameIndex(frameIdx);
+		return offsets[frameIdx];
+	}
+
+	/**
+	 * @param frameIdx 0-based frame index
+	 * @return size of the IrbImage of the given frame
+	 */
+	public int size(int frameIdx) {
+		checkFrameIndex(frameIdx);
+		return sizes[frameIdx];
+	}
+
+	private void checkFrameIndex(int frameIdx) {
+		if (frameIdx < 0 || frameIdx >= count) {
+			throw new IndexOutOfBoundsException("frame index " + frameIdx + " out of range [0, " + count + ")");
+		}
+	}
+
+	void add(long offset, long size) {
+		if (size > Integer.MAX_VALUE) {
+			throw new RuntimeException("frame at offset " + offset + " too large: " + size + " bytes");
+		}
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, 2 * count);
+			sizes = Arrays.copyOf(sizes, 2 * count);
+		}
+		offsets[count] = offset;
+		sizes[count] = (int) size;
+		count++;
+	}
+
+	/**
+	 * Offsets in frame headers are stored as unsigned 32-bit integers, which wrap around beyond 4 GB.
+	 * Frames are stored in ascending order, so the actual offset is the first one at or after {@code position}.
+	 *
+	 * @param offset32 offset as stored in the file
+	 * @param position offset in file before which the referenced data cannot start
+	 * @return actual offset in file
+	 */
+	static long unwrapOffset(long offset32, long position) {
+		long offset = (position & ~0xFFFFFFFFL) | offset32;
+		if (offset < position) {
+			offset += 1L << 32;
+		}
+		return offset;
+	}
+
+	/**
+	 * Index the frames of a VARIOCAM file: all IMAGE blocks of the file,
+	 * followed by the chain of frame headers in case the file is a video.
+	 *
+	 * @param file file to read frame headers from
+	 * @param headerBlocks header blocks read from the start of {@code file}, sorted by offset
+	 * @param headers frame headers of the FRAME_HEADER blocks of {@code file}, in the same order
+	 * @param hasVideoFrames true if the frame header chain after the header block data is to be followed
+	 * @return index of the frames in the given file
+	 */
+	static IrbFrameIndex ofImageBlocks(IrbRandomAccess file, List<IrbHeaderBlock> headerBlocks, List<IrbFrameHeader> headers, boolean hasVideoFrames) {
+		IrbFrameIndex index = new IrbFrameIndex();
+
+		for (IrbHeaderBlock block : headerBlocks) {
+			if (block.blockType == IrbBlockType.IMAGE) {
+				index.add(block.offset, block.size);
+			}
+		}
+
+		if (hasVideoFrames && !headers.isEmpty()) {
+			// same logic as in IrbFile.read, but only the frame headers are read
+			IrbFrameHeader frameHeader = headers.get(headers.size() - 1);
+			long headerPosition = 0;
+			while (frameHeader.expected_next_offset != frameHeader.offset) {
+				final long imageOffset = unwrapOffset(frameHeader.offset, headerPosition);
+				index.add(imageOffset, frameHeader.size);
+
+				// expect another frame header after current frame
+				headerPosition = imageOffset + frameHeader.size;
+				final long token = file.acquire();
+				try {
+					frameHeader = IrbFrameHeader.fromBuffer(file.slice(headerPosition, 64), 0, 64);
+				} finally {
+					file.release(token);
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Index the frames of an oSaveIRB video file,
+	 * in which the frames are complete IRB files appended one after another.
+	 * See docs/notes.txt for the layout of these frames.
+	 *
+	 * @param file file to read frame headers from
+	 * @param position offset in file at which the first appended frame starts
+	 * @return index of the frames in the given file
+	 */
+	static IrbFrameIndex ofAppendedFrames(IrbRandomAccess file, long position) {
+		IrbFrameIndex index = new IrbFrameIndex();
+
+		while (position < file.size()) {
+			// only the headers of the current frame are read at a time
+			final long token = file.acquire();
+			try {
+				final long dataEnd = blockDataEnd(file, position, true);
+				if (dataEnd >= file.size()) {
+					// last frame only has metadata, but no actual image
+					break;
+				}
+
+				// expect an IMAGE header block and a HEADER header block
+				ByteBuffer buf = file.slice(dataEnd, 2 * 32);
+				IrbHeaderBlock imageHeaderBlock = IrbHeaderBlock.fromBuffer(buf);
+				if (imageHeaderBlock.blockType != IrbBlockType.IMAGE) {
+					throw new RuntimeException("expecting IMAGE header block, but got " + imageHeaderBlock.blockType);
+				}
+				IrbHeaderBlock headerHeaderBlock = IrbHeaderBlock.fromBuffer(buf);
+				if (headerHeaderBlock.blockType != IrbBlockType.FRAME_HEADER) {
+					throw new RuntimeException("expecting HEADER header block, but got " + headerHeaderBlock.blockType);
+				}
+
+				// now comes the actual frame image
+				final long imageOffset = dataEnd + 2 * 32;
+				final int imageSize = uncompressedImageSize(file, imageOffset);
+				index.add(imageOffset, imageSize);
+
+				position = imageOffset + imageSize;
+			} finally {
+				file.release(token);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Find the end of the header block data of the IRB file starting at {@code position},
+	 * i.e., where IrbFile.read leaves the read pointer: at the end of the last block in the file.
+	 *
+	 * @param file file to read from; needs to be acquired by the caller
+	 * @param position offset in file at which the IRB file header starts
+	 * @param isVideoFrameFirstRead if true, IMAGE blocks only provide the image metadata (oSaveIRB video frames)
+	 * @return offset in file of the end of the header block data
+	 */
+	static long blockDataEnd(IrbRandomAccess file, long position, boolean isVideoFrameFirstRead) {
+		IrbFileHeader header = IrbFileHeader.fromBuffer(file.slice(position, 64));
+
+		ByteBuffer buf = file.slice(position + header.blockOffset, header.blockCount * 32);
+		List<IrbHeaderBlock> headerBlocks = new LinkedList<>();
+		for (int i = 0; i < header.blockCount; ++i) {
+			headerBlocks.add(IrbHeaderBlock.fromBuffer(buf));
+		}
+		headerBlocks.sort((IrbHeaderBlock a, IrbHeaderBlock b) -> { return Long.compare(a.offset, b.offset); });
+
+		long dataEnd = position + header.blockOffset + header.blockCount * 32;
+		for (IrbHeaderBlock block : headerBlocks) {
+			if (block.blockType == IrbBlockType.EMPTY) {
+				continue;
+			} else if (block.blockType == IrbBlockType.IMAGE && isVideoFrameFirstRead) {
+				dataEnd = position + block.offset + IMAGE_METADATA_SIZE;
+			} else {
+				dataEnd = position + block.offset + block.size;
+			}
+		}
+		return dataEnd;
+	}
+
+	/**
+	 * Determine the size of an uncompressed IrbImage from its header.
+	 *
+	 * @param file file to read from; needs to be acquired by the caller
+	 * @param imageOffset offset in file at which the IrbImage starts
+	 * @return size of the IrbImage including header, palette and metadata
+	 */
+	static int uncompressedImageSize(IrbRandomAccess file, long imageOffset) {
+		ByteBuffer buf = file.slice(imageOffset, 8);
+		buf.getShort(); // bytesPerPixel
+		final short compressionType = buf.getShort();
+		final short width = buf.getShort();
+		final short height = buf.getShort();
+		if (compressionType != 0) {
+			throw new RuntimeException("compressed oSaveIRB video frames are not supported yet: compression type " + compressionType);
+		}
+		return IMAGE_METADATA_SIZE + width * height * 2;
+	}
+}
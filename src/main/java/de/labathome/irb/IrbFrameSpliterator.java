@@ -0,0 +1,77 @@
+/* irb
+ * IrbFrameSpliterator Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the video frames of an IrbFile one after another, as they are consumed.
+ * The frame range is split in halves for parallel streams,
+ * since the location of every frame is known from the frame index.
+ */
+class IrbFrameSpliterator implements Spliterator<IrbImage> {
+
+	/** do not split ranges of fewer frames than this */
+	private static final int MIN_SPLIT_SIZE = 2;
+
+	private final IrbFile irbFile;
+
+	private final boolean raw;
+
+	/** index of the next frame to decode */
+	private int frameIdx;
+
+	/** index after the last frame to decode */
+	private final int toIdx;
+
+	/**
+	 * @param irbFile file to decode frames from; must have a frame index
+	 * @param fromIdx 0-based index of the first frame to decode (inclusive)
+	 * @param toIdx   0-based index of the last frame to decode (exclusive)
+	 * @param raw     if true, only keep raw pixel values as in {@link IrbFile#getRawFrame(int)}
+	 */
+	IrbFrameSpliterator(IrbFile irbFile, int fromIdx, int toIdx, boolean raw) {
+		this.irbFile = irbFile;
+		this.frameIdx = fromIdx;
+		this.toIdx = toIdx;
+		this.raw = raw;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super IrbImage> action) {
+		if (frameIdx >= toIdx) {
+			return false;
+		}
+		final int idx = frameIdx++;
+		action.accept(raw ? irbFile.getRawFrame(idx) : irbFile.getFrame(idx));
+		return true;
+	}
+
+	@Override
+	public Spliterator<IrbImage> trySplit() {
+		final int remaining = toIdx - frameIdx;
+		if (remaining < 2 * MIN_SPLIT_SIZE) {
+			return null;
+		}
+
+		// hand the first half to the new spliterator to keep the encounter order
+		final int midIdx = frameIdx + remaining / 2;
+		Spliterator<IrbImage> prefix = new IrbFrameSpliterator(irbFile, frameIdx, midIdx, raw);
+		frameIdx = midIdx;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return toIdx - frameIdx;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
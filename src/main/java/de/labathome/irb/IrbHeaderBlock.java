@@ -12,8 +12,12 @@ public class IrbHeaderBlock {
 	public IrbBlockType blockType;
 	public int dword2;
 	public int frameIndex;
-	public int offset;
-	public int size;
+
+	/** offset of the block data; stored as unsigned 32-bit integer */
+	public long offset;
+
+	/** size of the block data; stored as unsigned 32-bit integer */
+	public long size;
 	public int dword6;
 	public int dword7;
 	public int dword8;
@@ -35,10 +39,10 @@ public class IrbHeaderBlock {
 		// 12
 
 		// starts at 0
-		headerBlock.offset = buf.getInt();
+		headerBlock.offset = Integer.toUnsignedLong(buf.getInt());
 		// 16
 
-		headerBlock.size = buf.getInt();
+		headerBlock.size = Integer.toUnsignedLong(buf.getInt());
 		// 20
 
 		headerBlock.dword6 = buf.getInt();
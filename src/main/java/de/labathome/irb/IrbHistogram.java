@@ -0,0 +1,248 @@
+/* irb
+ * IrbHistogram Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Histogram of temperatures with bins of fixed width, e.g. of a single frame or of a whole recording.
+ * Values are counted one at a time, so a histogram can be accumulated while decoding.
+ * Histograms with the same bins can be merged, e.g. after accumulating them on several threads.
+ * Percentiles are interpolated linearly within their bin, so they are accurate to about one bin width.
+ * NaN values, e.g. of masked pixels, are not counted.
+ */
+public class IrbHistogram {
+
+	/** lower edge of the first bin in Kelvin */
+	public final float min;
+
+	/** width of each bin in Kelvin */
+	public final float binWidth;
+
+	/** number of values in each bin: bin i covers [min + i * binWidth, min + (i+1) * binWidth) */
+	public final long[] counts;
+
+	/** 1 / {@link #binWidth} */
+	private final float invBinWidth;
+
+	/** number of values below {@link #min} */
+	private long underflow;
+
+	/** number of values at or above the upper edge of the last bin */
+	private long overflow;
+
+	/** smallest value counted so far */
+	private float minValue = Float.POSITIVE_INFINITY;
+
+	/** largest value counted so far */
+	private float maxValue = Float.NEGATIVE_INFINITY;
+
+	/**
+	 * @param min     lower edge of the first bin in Kelvin
+	 * @param max     upper edge of the last bin in Kelvin
+	 * @param numBins number of bins
+	 */
+	public IrbHistogram(float min, float max, int numBins) {
+		if (numBins < 1 || !(max > min)) {
+			throw new RuntimeException("need at least one bin of positive width, but got " + numBins + " bins in [" + min + ", " + max + ")");
+		}
+		this.min = min;
+		this.binWidth = (max - min) / numBins;
+		this.invBinWidth = numBins / (max - min);
+		this.counts = new long[numBins];
+	}
+
+	/**
+	 * @param bins histogram to take the bins from; its counts are not copied
+	 */
+	public IrbHistogram(IrbHistogram bins) {
+		this.min = bins.min;
+		this.binWidth = bins.binWidth;
+		this.invBinWidth = bins.invBinWidth;
+		this.counts = new long[bins.counts.length];
+	}
+
+	/**
+	 * @param value temperature in Kelvin to count; NaN is ignored
+	 */
+	public void add(float value) {
+		if (Float.isNaN(value)) {
+			return;
+		}
+		if (value < minValue) {
+			minValue = value;
+		}
+		if (value > maxValue) {
+			maxValue = value;
+		}
+		final float bin = (value - min) * invBinWidth;
+		if (bin < 0.0F) {
+			underflow++;
+		} else if (bin < counts.length) {
+			counts[(int) bin]++;
+		} else {
+			overflow++;
+		}
+	}
+
+	/**
+	 * @param pixels temperatures in Kelvin to count; NaN values are ignored
+	 * @return this object
+	 */
+	public IrbHistogram add(float[] pixels) {
+		for (int i = 0; i < pixels.length; ++i) {
+			add(pixels[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Count all pixels of an image, either decoded or read using {@link IrbImage#fromBufferRaw(java.nio.ByteBuffer, int, int)}.
+	 *
+	 * @param image image to count the pixels of
+	 * @return this object
+	 */
+	public IrbHistogram add(IrbImage image) {
+		if (image.pixels != null) {
+			return add(image.pixels);
+		}
+
+		final ShortBuffer rawPixels = image.rawPixels;
+		final int numPixels = image.width * image.height;
+		if (image.compression_type == 2) {
+			for (int i = 0; i < numPixels; ++i) {
+				add((rawPixels.get(i) & 0xFFFF) / 100.0F);
+			}
+		} else {
+			final float[] table = image.paletteTable().table();
+			for (int i = 0; i < numPixels; ++i) {
+				add(table[rawPixels.get(i) & 0xFFFF]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Add the counts of another histogram with the same bins to this one.
+	 *
+	 * @param other histogram to merge into this one
+	 * @return this object
+	 */
+	public IrbHistogram merge(IrbHistogram other) {
+		if (other.min != min || other.binWidth != binWidth || other.counts.length != counts.length) {
+			throw new RuntimeException("cannot merge histograms with different bins: " + counts.length + " bins of " + binWidth + " K from " + min
+					+ " K and " + other.counts.length + " bins of " + other.binWidth + " K from " + other.min + " K");
+		}
+		for (int i = 0; i < counts.length; ++i) {
+			counts[i] += other.counts[i];
+		}
+		underflow += other.underflow;
+		overflow += other.overflow;
+		minValue = Math.min(minValue, other.minValue);
+		maxValue = Math.max(maxValue, other.maxValue);
+		return this;
+	}
+
+	/**
+	 * @return number of values counted so far, including those outside of the bins
+	 */
+	public long getCount() {
+		long count = underflow + overflow;
+		for (int i = 0; i < counts.length; ++i) {
+			count += counts[i];
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of values below the first bin
+	 */
+	public long getUnderflow() {
+		return underflow;
+	}
+
+	/**
+	 * @return number of values above the last bin
+	 */
+	public long getOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * @return smallest value counted so far in Kelvin
+	 */
+	public float getMinValue() {
+		return minValue;
+	}
+
+	/**
+	 * @return largest value counted so far in Kelvin
+	 */
+	public float getMaxValue() {
+		return maxValue;
+	}
+
+	/**
+	 * Estimate a percentile, interpolating linearly within the bin it falls into.
+	 * Percentiles below the first or above the last bin are reported
+	 * as the smallest or largest value counted, respectively.
+	 *
+	 * @param percent percentile to estimate, in [0, 100], e.g. 50 for the median
+	 * @return estimated temperature in Kelvin below which the given percentage of values lie; NaN if nothing was counted
+	 */
+	public float percentile(double percent) {
+		if (percent < 0.0 || percent > 100.0) {
+			throw new RuntimeException("percentile must be in [0, 100], but is " + percent);
+		}
+		final long count = getCount();
+		if (count == 0) {
+			return Float.NaN;
+		}
+
+		final double rank = percent / 100.0 * count;
+		long cumulative = underflow;
+		if (rank <= cumulative) {
+			return minValue;
+		}
+		for (int i = 0; i < counts.length; ++i) {
+			if (counts[i] > 0 && rank <= cumulative + counts[i]) {
+				final float value = (float) (min + (i + (rank - cumulative) / counts[i]) * binWidth);
+				return Math.max(minValue, Math.min(maxValue, value));
+			}
+			cumulative += counts[i];
+		}
+		return maxValue;
+	}
+
+	/**
+	 * Export the histogram to a text file: a comment line with the number of values outside of the bins,
+	 * followed by one line per bin with the center of the bin in degree Celsius and the number of values in it.
+	 *
+	 * @param filename file to export the histogram to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void exportData(String filename) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 64 * 1024)) {
+			out.write(("# T[degC] count; below: " + underflow + ", above: " + overflow + "\n").getBytes(StandardCharsets.US_ASCII));
+
+			final byte[] line = new byte[128];
+			for (int i = 0; i < counts.length; ++i) {
+				int pos = IrbTextWriter.format(min + (i + 0.5F) * binWidth - IrbImage.CELSIUS_OFFSET, line, 0);
+				line[pos++] = ' ';
+				final byte[] count = Long.toString(counts[i]).getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(count, 0, line, pos, count.length);
+				pos += count.length;
+				line[pos++] = '\n';
+				out.write(line, 0, pos);
+			}
+		}
+	}
+}
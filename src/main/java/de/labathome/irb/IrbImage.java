@@ -7,9 +7,11 @@ package de.labathome.irb;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.Date;
-import java.util.Locale;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -94,8 +96,24 @@ public class IrbImage {
 	@Expose(serialize = true)
 	public float maxData;
 
+	/** mean of all pixels in Kelvin; not part of the exported metadata */
+	public float meanData;
+
+	/** [height * width] image data in Kelvin; row-major: width is fast dimension.
+	 * null if only the raw pixel values were read; see {@link #decodeRawPixels()} */
+	@Expose(serialize = false)
+	public float[] pixels;
+
+	/** [height * width] raw 16-bit pixel values; row-major: width is fast dimension.
+	 * Only set if read using {@link #fromBufferRaw(ByteBuffer, int, int)}; use absolute gets only.
+	 * For compression types 0 and 1: palette index in the upper byte, interpolation fraction in the lower byte;
+	 * for compression type 2: temperature in units of 0.01 K.
+	 * For uncompressed images, this is a view into the buffer the image was read from until {@link #detach() detached}. */
 	@Expose(serialize = false)
-	public float[][] data;
+	public ShortBuffer rawPixels;
+
+	/** lookup table of {@link #palette}; resolved on first use by {@link #paletteTable()} */
+	private IrbPaletteTable paletteTable;
 
 	/**
 	 * Read the IMAGE data corresponding to this block.
@@ -105,11 +123,46 @@ public class IrbImage {
 	 * @param size
 	 */
 	public static IrbImage fromBuffer(ByteBuffer buf, int offset, int size, boolean isVideoFrameFirstRead) {
+		return fromBuffer(buf, offset, size, isVideoFrameFirstRead, false, null, null);
+	}
+
+	/**
+	 * Read the IMAGE data corresponding to this block, touching each pixel only once:
+	 * the decoding loop writes the temperatures in Kelvin into {@link #pixels}
+	 * and, if requested, in degree Celsius into the given array,
+	 * determines {@link #minData}, {@link #maxData} and {@link #meanData} along the way
+	 * and counts the temperatures in the given histogram.
+	 *
+	 * @param buf           buffer to read image from
+	 * @param offset
+	 * @param size
+	 * @param celsiusPixels if not null, [height * width] array to write the temperatures in degree Celsius into,
+	 *                      as {@link #getCelsiusPixels()} would return them
+	 * @param histogram     if not null, the temperatures of all pixels in Kelvin are counted in this histogram
+	 */
+	public static IrbImage fromBuffer(ByteBuffer buf, int offset, int size, float[] celsiusPixels, IrbHistogram histogram) {
+		return fromBuffer(buf, offset, size, false, false, celsiusPixels, histogram);
+	}
+
+	/**
+	 * Read the IMAGE data corresponding to this block, but only keep the raw pixel values in {@link #rawPixels}.
+	 * Temperatures are derived from them on access, or in bulk via {@link #decodeRawPixels()}.
+	 *
+	 * @param buf    buffer to read image from
+	 * @param offset
+	 * @param size
+	 */
+	public static IrbImage fromBufferRaw(ByteBuffer buf, int offset, int size) {
+		return fromBuffer(buf, offset, size, false, true, null, null);
+	}
+
+	private static IrbImage fromBuffer(ByteBuffer buf, int offset, int size, boolean isVideoFrameFirstRead, boolean keepRawPixels,
+			float[] celsiusPixels, IrbHistogram histogram) {
 		buf.position(offset);
 
 		final int initialPosition = buf.position();
 
-		IrbImage image = new IrbImage(buf, offset, size, isVideoFrameFirstRead);
+		IrbImage image = new IrbImage(buf, offset, size, isVideoFrameFirstRead, keepRawPixels, celsiusPixels, histogram);
 
 		final int expectedSize;
 		if (isVideoFrameFirstRead) {
@@ -123,8 +176,8 @@ public class IrbImage {
 		}
 
 		if (buf.position() - initialPosition != expectedSize) {
-			System.out.println("WARNING: byte counting error in reading of IrbImage; expected " + expectedSize +
-					" but read " + (buf.position() - initialPosition));
+			IrbDiagnostics.warning("byte counting error in reading of IrbImage; expected %d but read %d",
+					expectedSize, buf.position() - initialPosition);
 		}
 
 		return image;
@@ -136,6 +189,11 @@ public class IrbImage {
 	 * @param isVideoFrame
 	 */
 	public IrbImage(ByteBuffer buf, int offset, int size, boolean isVideoFrameFirstRead) {
+		this(buf, offset, size, isVideoFrameFirstRead, false, null, null);
+	}
+
+	private IrbImage(ByteBuffer buf, int offset, int size, boolean isVideoFrameFirstRead, boolean keepRawPixels,
+			float[] celsiusPixels, IrbHistogram histogram) {
 		readImageHeader(buf);
 		// 60
 
@@ -149,23 +207,44 @@ public class IrbImage {
 			return;
 		}
 
-		data = new float[height][width];
+		// raw values are only kept for compressed data if requested; uncompressed data is not copied at all
+		final short[] raw;
+		if (keepRawPixels) {
+			raw = (compression_type == 0) ? null : new short[height * width];
+		} else {
+			raw = null;
+			pixels = new float[height * width];
+			if (celsiusPixels != null && celsiusPixels.length < pixels.length) {
+				throw new RuntimeException("need " + pixels.length + " pixels for the temperatures in degree Celsius, but got " + celsiusPixels.length);
+			}
+		}
 
+		// the decoders determine the data range along with the pixels
 		switch (compression_type) {
 		case 0:
-			readImageDataUncompressed(buf);
+			if (keepRawPixels) {
+				readRawDataUncompressed(buf);
+			} else {
+				readImageDataUncompressed(buf, celsiusPixels, histogram);
+			}
 			break;
 		case 1:
-			readImageDataCompressed1(buf);
+			readImageDataCompressed1(buf, raw, celsiusPixels, histogram);
 			break;
 		case 2:
-			readImageDataCompressed2(buf, offset + 1728, size - 1728);
+			readImageDataCompressed2(buf, offset + 1728, size - 1728, raw, celsiusPixels, histogram);
 			break;
 		default:
 			throw new RuntimeException("unknown compression type: " + compression_type);
 		}
 
-		updateDataRange();
+		if (raw != null) {
+			rawPixels = ShortBuffer.wrap(raw);
+		}
+
+		if (pixels == null) {
+			updateDataRange();
+		}
 	}
 
 	private void readImageHeader(ByteBuffer buf) {
@@ -176,7 +255,7 @@ public class IrbImage {
 		width = buf.getShort();
 		height = buf.getShort();
 
-		System.out.printf("# IMAGE: bytesPerPixel=%d compression_type=%d width=%d height=%d\n",
+		IrbDiagnostics.info("# IMAGE: bytesPerPixel=%d compression_type=%d width=%d height=%d",
 				bytesPerPixel, compression_type, width, height);
 
 		// don't know: always 0
@@ -191,7 +270,7 @@ public class IrbImage {
 		// could be end of ROI
 		int widthM1 = buf.getShort();
 		if (width - 1 != widthM1) {
-			System.out.printf("width-1 != widthM1 (%d) ???\n", widthM1);
+			IrbDiagnostics.warning("width-1 != widthM1 (%d) ???", widthM1);
 		}
 
 		// don't know: always 0
@@ -202,7 +281,7 @@ public class IrbImage {
 		// could be end of ROI
 		int heightM1 = buf.getShort();
 		if (height - 1 != heightM1) {
-			System.out.printf("height-1 != heightM1 (%d) ???\n", heightM1);
+			IrbDiagnostics.warning("height-1 != heightM1 (%d) ???", heightM1);
 		}
 
 		// don't know: always 0
@@ -258,7 +337,7 @@ public class IrbImage {
 		checkIs(0x101, var13);
 
 		if (width > 10000 || height > 10000) {
-			System.out.printf("error: width (%d) or height (%d) out-of-range!\n", width, height);
+			IrbDiagnostics.warning("width (%d) or height (%d) out-of-range!", width, height);
 			width = 1;
 			height = 1;
 			return;
@@ -360,262 +439,320 @@ public class IrbImage {
 		}
 	}
 
-	private void readImageDataUncompressed(ByteBuffer buf) {
+	/**
+	 * @param celsius   if not null, the temperatures in degree Celsius are written into this array
+	 * @param histogram if not null, the temperatures are counted in this histogram
+	 */
+	private void readImageDataUncompressed(ByteBuffer buf, float[] celsius, IrbHistogram histogram) {
 		final int initialPosition = buf.position();
 
+		// each pixel is a little-endian 16-bit word: fraction v1 in the low byte, palette index v2 in the high byte
+		final float[] table = paletteTable().table();
+		final ShortBuffer rawData = buf.asShortBuffer();
+		final short[] row = new short[width];
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		double sum = 0.0;
 		for (int y = 0; y < height; ++y) {
+			rawData.get(row);
+			final int rowOffset = y * width;
 			for (int x = 0; x < width; ++x) {
-
-				short v1 = buf.get();
-				if (v1 < 0) {
-					v1 += 256;
+				final float v = table[row[x] & 0xFFFF];
+				pixels[rowOffset + x] = v;
+				if (celsius != null) {
+					celsius[rowOffset + x] = v - CELSIUS_OFFSET;
 				}
-
-				float f = v1 / 256.0F;
-
-				short v2 = buf.get();
-				if (v2 < 0) {
-					v2 += 256;
+				if (v < min) {
+					min = v;
 				}
-
-				// linear interpolation between neighboring palette entries
-				float v = palette[v2 + 1] * f + palette[v2] * (1.0F - f);
-				if (v < 0.0F) {
-					v = 0.0F; // or 255 ...
+				if (v > max) {
+					max = v;
+				}
+				sum += v;
+				if (histogram != null) {
+					histogram.add(v);
 				}
-
-				data[y][x] = v;
 			}
 		}
+		setDataRange(min, max, sum);
 
-		if (buf.position() - initialPosition != (height * width * 2)) {
-			throw new RuntimeException("byte counting error in parsing of IrbImage pixel data");
-		}
+		buf.position(initialPosition + height * width * 2);
 	}
 
-	private void readImageDataCompressed1(ByteBuffer buf) {
-		int offset = buf.position();
-
-		int dataSize = width * height;
-
-		int pixelCount = dataSize;
-
-		int v1_pos = 0;
+	/**
+	 * Keep a view of the uncompressed pixel data: each pixel is a little-endian 16-bit word
+	 * with the fraction v1 in the low byte and the palette index v2 in the high byte.
+	 */
+	private void readRawDataUncompressed(ByteBuffer buf) {
+		final int initialPosition = buf.position();
 
-		// used if data is compressed
-		int v2_pos = v1_pos + pixelCount;
+		ByteBuffer rawData = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+		rawData.limit(height * width * 2);
+		rawPixels = rawData.asShortBuffer();
 
-		int v2_count = 0;
-		int v2 = 0;
+		buf.position(initialPosition + height * width * 2);
+	}
 
-		// compression active: run-length encoding
-		for (int y = 0; y < height; ++y) {
-			for (int x = 0; x < width; ++x) {
-				if (v2_count == 0) {
-					v2_count = buf.get(offset + v2_pos);
-					if (v2_count < 0) {
-						v2_count += 256;
+	/**
+	 * Run-length encoded palette indices: the fractions v1 of all pixels,
+	 * followed by (count, v2) pairs for runs of pixels with the same palette index v2.
+	 * A count of 0 extends to the end of the image.
+	 *
+	 * @param raw if not null, raw 16-bit pixel values are written into this array instead of temperatures into {@link #pixels}
+	 * @param celsius if not null and temperatures are written, they are also written in degree Celsius into this array
+	 * @param histogram if not null and temperatures are written, they are counted in this histogram
+	 */
+	private void readImageDataCompressed1(ByteBuffer buf, short[] raw, float[] celsius, IrbHistogram histogram) {
+		final int numPixels = width * height;
+
+		final byte[] v1 = new byte[numPixels];
+		buf.get(v1);
+
+		final float[] table = paletteTable().table();
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		double sum = 0.0;
+		int runPosition = buf.position();
+		int i = 0;
+		while (i < numPixels) {
+			final int count = buf.get(runPosition) & 0xFF;
+			final int v2 = buf.get(runPosition + 1) & 0xFF;
+			runPosition += 2;
+
+			// the table entries of all pixels in this run start here
+			final int base = v2 << 8;
+			final int end = (count == 0) ? numPixels : Math.min(numPixels, i + count);
+			if (raw != null) {
+				for (; i < end; ++i) {
+					raw[i] = (short) (base | (v1[i] & 0xFF));
+				}
+			} else {
+				for (; i < end; ++i) {
+					final float v = table[base | (v1[i] & 0xFF)];
+					pixels[i] = v;
+					if (celsius != null) {
+						celsius[i] = v - CELSIUS_OFFSET;
 					}
-
-					v2_pos++;
-
-					// ----------
-
-					v2 = buf.get(offset + v2_pos);
-					if (v2 < 0) {
-						v2 += 256;
+					if (v < min) {
+						min = v;
+					}
+					if (v > max) {
+						max = v;
+					}
+					sum += v;
+					if (histogram != null) {
+						histogram.add(v);
 					}
-
-					v2_pos++;
-				}
-
-				int v1 = buf.get(offset + v1_pos);
-				if (v1 < 0) {
-					v1 += 256;
 				}
+			}
+		}
+		if (raw == null) {
+			setDataRange(min, max, sum);
+		}
 
-				v1_pos++;
-
-				float f = v1 / 256.0F;
+		buf.position(runPosition);
+	}
 
-				// linear interpolation between neighboring palette entries
-				float v = palette[v2 + 1] * f + palette[v2] * (1.0F - f);
-				if (v < 0.0F) {
-					v = 0.0F; // or 255 ...
-				}
+	/**
+	 * @param raw if not null, raw 16-bit pixel values are written into this array instead of temperatures into {@link #pixels}
+	 * @param celsius if not null and temperatures are written, they are also written in degree Celsius into this array
+	 * @param histogram if not null and temperatures are written, they are counted in this histogram
+	 */
+	private void readImageDataCompressed2(ByteBuffer buf, int offset, int size, short[] raw, float[] celsius, IrbHistogram histogram) {
+		// TODO: figure out if this scaling is correct - looks somewhat reasonable for an example though
+		IrbDeltaDecoder.decode(buf, offset, size, width * height, raw, pixels, celsius, histogram, (raw == null) ? this : null);
 
-				data[y][x] = v;
+		if (buf.position() - offset != size) {
+			throw new RuntimeException("byte counting error in parsing of IrbImage pixel data");
+		}
+	}
 
-				v2_count--;
+	void updateDataRange() {
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		double sum = 0.0;
+
+		if (pixels != null) {
+			for (int i = 0; i < pixels.length; ++i) {
+				final float v = pixels[i];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				sum += v;
+			}
+		} else if (compression_type == 2) {
+			for (int i = 0; i < height * width; ++i) {
+				final float v = (rawPixels.get(i) & 0xFFFF) / 100.0F;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				sum += v;
+			}
+		} else {
+			final float[] table = paletteTable().table();
+			for (int i = 0; i < height * width; ++i) {
+				final float v = table[rawPixels.get(i) & 0xFFFF];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				sum += v;
 			}
 		}
 
-		// TODO: position buffer at end to make santiy checks happy
-		// or better: fix sanity check...
+		setDataRange(min, max, sum);
 	}
 
-	// Put a simple container around the bit-buffer logic so the core stays readable.
-    // This reader refills from 16-bit little-endian words and exposes MSB-first bits.
-    private static final class BitReaderLE16MSB {
-        // Underlying byte array (compressed stream)
-        private final byte[] data;
-        // Current byte position in 'data' (advanced by 2 on each 16-bit refill)
-        private int pos;
-        // 32-bit shift register used as a left-shifting buffer
-        private int buf;
-        // Number of valid bits currently in 'buf'
-        private int bits;
-
-        // Construct a reader that starts at 'offset' bytes into 'data'
-        BitReaderLE16MSB(byte[] data, int offset) {
-            this.data = data;
-            this.pos = offset;
-            this.buf = 0;
-            this.bits = 0;
-        }
-
-        // Refill 'buf' with one 16-bit little-endian word if fewer than 16 bits are present.
-        // The new 16 bits are aligned to the high side of 'buf' so that future MSB-first reads work.
-        private void refill16() {
-            if (bits < 16 && pos + 1 < data.length) {
-                int lo = data[pos] & 0xFF;
-                int hi = data[pos + 1] & 0xFF;
-                int w = lo | (hi << 8);
-                pos += 2;
-                // Align the just-read 16 bits to the high side of the 32-bit buffer
-                buf = ((w << (16 - bits)) & 0xFFFFFFFF) | buf;
-                bits += 16;
-            }
-        }
-
-        // Read exactly 8 bits as an unsigned byte, MSB-first from 'buf'.
-        int read8() {
-            if (bits < 16) {
-                refill16();
-            }
-            if (bits < 8) {
-                throw new IllegalArgumentException("Unexpected end of stream while reading 8 bits");
-            }
-            int out = (buf >>> 24) & 0xFF;
-            buf = (buf << 8);
-            bits -= 8;
-            return out;
-        }
-
-        // Read 'n' bits (1..24) as an unsigned integer, MSB-first from 'buf'.
-        int readBits(int n) {
-            if (n <= 0 || n > 24) {
-                throw new IllegalArgumentException("readBits width out of range: " + n);
-            }
-            while (bits < n) {
-                refill16();
-                if (bits < n && pos + 1 >= data.length) {
-                    throw new IllegalArgumentException("Unexpected end of stream while reading " + n + " bits");
-                }
-            }
-            int out = (buf >>> (32 - n)) & ((1 << n) - 1);
-            buf = (buf << n);
-            bits -= n;
-            return out;
-        }
-    }
-
-	private void readImageDataCompressed2(ByteBuffer buf, int offset, int size) {
-		buf.position(offset);
+	/**
+	 * @param min minimum temperature of all pixels in Kelvin
+	 * @param max maximum temperature of all pixels in Kelvin
+	 * @param sum sum of the temperatures of all pixels in Kelvin
+	 */
+	void setDataRange(float min, float max, double sum) {
+		minData = min;
+		maxData = max;
+		meanData = (float) (sum / (height * width));
+
+		// called for every frame: do not box the values unless someone is listening
+		if (IrbDiagnostics.isEnabled()) {
+			IrbDiagnostics.info("data min: %s", minData);
+			IrbDiagnostics.info("data max: %s", maxData);
+		}
+	}
 
-		byte[] compressed = new byte[size];
-		buf.get(compressed);
+	/**
+	 * @return distance in elements between the starts of two consecutive rows in {@link #pixels}
+	 */
+	public int getStride() {
+		return width;
+	}
 
-		// Compute total number of pixels to decode
-        final int n = width * height;
+	/**
+	 * @param x column index
+	 * @param y row index
+	 * @return temperature of the given pixel in Kelvin
+	 */
+	public float getPixel(int x, int y) {
+		if (pixels == null) {
+			return rawToKelvin(rawPixels.get(y * width + x));
+		}
+		return pixels[y * width + x];
+	}
 
-        // Read the first pixel as a 16-bit little-endian literal
-        final int p0 = ((compressed[1] & 0xFF) << 8) | (compressed[0] & 0xFF);
+	/**
+	 * @param raw 16-bit raw pixel value
+	 * @return temperature in Kelvin
+	 */
+	private float rawToKelvin(short raw) {
+		if (compression_type == 2) {
+			return (raw & 0xFFFF) / 100.0F;
+		} else {
+			return paletteTable().get(raw);
+		}
+	}
 
-        // Store the first pixel at (0,0)
-        int pixel_value = (short) (p0 & 0xFFFF);
-		if (pixel_value < 0) {
-        	pixel_value += 65536;
-        }
-		// TODO: figure out if this scaling is correct - looks somewhat reasonable for an example though
-        data[0][0] = pixel_value / 100.0F;
-
-        // Prepare to decode the remaining (n - 1) deltas
-        final BitReaderLE16MSB br = new BitReaderLE16MSB(compressed, 2);
-
-        // Set up the prefix threshold and the extended-code parameters
-        // prefix values 0..191 are "short" deltas
-        final int THRESH = 192;
-        // extended payload width
-        final int EXT_BITS = 11;
-        final int EXT_MAX = (1 << EXT_BITS) - 1;
-        // subtraction bias applied to extended codes
-        final int BIAS = THRESH * EXT_MAX;
-
-        // Track previous sample to reconstruct absolute values from deltas
-        int prev = p0;
-
-        // Decode in raster order, filling the 2D array row by row
-        int x = 1;
-        int y = 0;
-
-        // Iterate over all remaining pixels
-        for (int i = 1; i < n; i++) {
-            // Read the 8-bit prefix
-            int prefix = br.read8();
-
-            // Compute the unsigned delta token 'u' (short or extended)
-            int u;
-            if (prefix < THRESH) {
-                u = prefix;
-            } else {
-                // Read the extended payload, then unbias
-                int ext = br.readBits(EXT_BITS);
-                u = ((prefix << EXT_BITS) | ext) - BIAS;
-            }
-
-            // Convert unsigned token to signed delta using the codec's even/odd rule
-            int d = u >>> 1;
-            if ((u & 1) != 0) {
-                d = -d;
-            }
-
-            // Accumulate delta with wrap to 16-bit
-            prev = (prev + d) & 0xFFFF;
-
-            // Write the reconstructed 16-bit sample into the output raster
-            pixel_value = (short) (prev & 0xFFFF);;
-            if (pixel_value < 0) {
-            	pixel_value += 65536;
-            }
-            data[y][x] = pixel_value / 100.0F;
-
-            // Advance raster position
-            x++;
-            if (x == width) {
-                x = 0;
-                y++;
-            }
-        }
+	/**
+	 * Resolve the lookup table of the {@link #palette} only once per image,
+	 * as looking it up in the cache of {@link IrbPaletteTable} hashes the whole palette.
+	 * After modifying the {@link #palette}, {@link #decodeRawPixels()} resolves it again.
+	 *
+	 * @return lookup table of the {@link #palette}
+	 */
+	IrbPaletteTable paletteTable() {
+		IrbPaletteTable table = paletteTable;
+		if (table == null) {
+			table = IrbPaletteTable.of(palette);
+			paletteTable = table;
+		}
+		return table;
+	}
 
-		if (buf.position() - offset != size) {
-			throw new RuntimeException("byte counting error in parsing of IrbImage pixel data");
+	/**
+	 * Convert all raw pixel values into temperatures.
+	 *
+	 * @param offset offset to subtract from the temperature in Kelvin, e.g., {@link #CELSIUS_OFFSET}
+	 * @return [height * width] converted temperatures
+	 */
+	private float[] convertRawPixels(float offset) {
+		final int numPixels = height * width;
+		float[] converted = new float[numPixels];
+		if (compression_type == 2) {
+			for (int i = 0; i < numPixels; ++i) {
+				converted[i] = (rawPixels.get(i) & 0xFFFF) / 100.0F - offset;
+			}
+		} else {
+			final float[] table = paletteTable().table();
+			for (int i = 0; i < numPixels; ++i) {
+				converted[i] = table[rawPixels.get(i) & 0xFFFF] - offset;
+			}
 		}
+		return converted;
 	}
 
-	private void updateDataRange() {
-		minData = Float.POSITIVE_INFINITY;
-		maxData = Float.NEGATIVE_INFINITY;
+	/**
+	 * Derive the temperatures in {@link #pixels} from the raw pixel values
+	 * of an image read using {@link #fromBufferRaw(ByteBuffer, int, int)}.
+	 * This can be called again after modifying the {@link #palette} to re-calibrate the image
+	 * without reading the file again.
+	 */
+	public void decodeRawPixels() {
+		if (rawPixels == null) {
+			throw new RuntimeException("no raw pixel values available");
+		}
+		// the palette might have been modified
+		paletteTable = null;
+		pixels = convertRawPixels(0.0F);
+		updateDataRange();
+	}
+
+	/**
+	 * Detach this image from the buffer it was read from,
+	 * so that it stays valid after the buffer is released, e.g. a slice of a mapped file.
+	 * Only {@link #rawPixels} of uncompressed images read using {@link #fromBufferRaw(ByteBuffer, int, int)}
+	 * are a view of the buffer; they are copied into the heap.
+	 *
+	 * @return this image
+	 */
+	public IrbImage detach() {
+		if (rawPixels != null && rawPixels.isDirect()) {
+			ShortBuffer source = rawPixels.duplicate();
+			source.clear();
+			ShortBuffer copy = ShortBuffer.allocate(source.remaining());
+			copy.put(source);
+			copy.flip();
+			rawPixels = copy;
+		}
+		return this;
+	}
 
+	/**
+	 * Get image data as two-dimensional array.
+	 * This is a copy of {@link #pixels}, created on every call.
+	 *
+	 * @return [height][width] image data in Kelvin
+	 */
+	public float[][] getData() {
+		final float[] pixels = (this.pixels == null) ? convertRawPixels(0.0F) : this.pixels;
+		float[][] data = new float[height][width];
 		for (int y = 0; y < height; ++y) {
-			for (int x = 0; x < width; ++x) {
-				minData = Math.min(minData, data[y][x]);
-				maxData = Math.max(maxData, data[y][x]);
-			}
+			System.arraycopy(pixels, y * width, data[y], 0, width);
 		}
+		return data;
+	}
 
-		System.out.println("data min: " + minData);
-		System.out.println("data max: " + maxData);
+	/**
+	 * Get image in deg. Celsius.
+	 * To get it along with decoding instead, see {@link #fromBuffer(ByteBuffer, int, int, float[], IrbHistogram)}.
+	 *
+	 * @return [height * width] image data; row-major: width is fast dimension
+	 */
+	public float[] getCelsiusPixels() {
+		if (pixels == null) {
+			return convertRawPixels(CELSIUS_OFFSET);
+		}
+		float[] celsius = new float[pixels.length];
+		for (int i = 0; i < pixels.length; ++i) {
+			celsius[i] = pixels[i] - CELSIUS_OFFSET;
+		}
+		return celsius;
 	}
 
 	/**
@@ -624,10 +761,13 @@ public class IrbImage {
 	 * @return [height][width] image data
 	 */
 	public float[][] getCelsiusImage() {
-		float[][] celsiusData = new float[data.length][data[0].length];
-		for (int i = 0; i < data.length; ++i) {
-			for (int j = 0; j < data[0].length; ++j) {
-				celsiusData[i][j] = data[i][j] - CELSIUS_OFFSET;
+		final float[] source = (pixels == null) ? convertRawPixels(CELSIUS_OFFSET) : pixels;
+		final float delta = (pixels == null) ? 0.0F : CELSIUS_OFFSET;
+		float[][] celsiusData = new float[height][width];
+		for (int y = 0; y < height; ++y) {
+			final int rowOffset = y * width;
+			for (int x = 0; x < width; ++x) {
+				celsiusData[y][x] = source[rowOffset + x] - delta;
 			}
 		}
 		return celsiusData;
@@ -664,6 +804,21 @@ public class IrbImage {
 	 * @param filename file to export metadata to
 	 */
 	public void exportMetaData(String filename) {
+		try {
+			writeMetaData(filename);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write all meta-data (except the actual image data) to a JSON file.
+	 * In contrast to {@link #exportMetaData(String)}, failures are passed on to the caller.
+	 *
+	 * @param filename file to write metadata to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeMetaData(String filename) throws IOException {
 		try (BufferedWriter w = new BufferedWriter(new FileWriter(filename))) {
 			Gson gson = new GsonBuilder()
 					.setPrettyPrinting()
@@ -671,8 +826,6 @@ public class IrbImage {
 					.create();
 			String json = gson.toJson(this);
 			w.write(json);
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
 	}
 
@@ -682,16 +835,8 @@ public class IrbImage {
 	 * @param filename file to export image data to
 	 */
 	public void exportImageData(String filename) {
-		try (BufferedWriter w = new BufferedWriter(new FileWriter(filename))) {
-			float[][] celsiusData = getCelsiusImage();
-			int height = celsiusData.length;
-			int width = celsiusData[0].length;
-			for (int i = height - 1; i >= 0; i--) {
-				for (int j = 0; j < width; ++j) {
-					w.write(String.format(Locale.ENGLISH, "%8.6f ", celsiusData[i][j]));
-				}
-				w.write("\n");
-			}
+		try {
+			IrbTextWriter.write(filename, (pixels == null) ? convertRawPixels(0.0F) : pixels, width, height, CELSIUS_OFFSET);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
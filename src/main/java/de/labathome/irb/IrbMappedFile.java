@@ -0,0 +1,375 @@
+/* irb
+ * IrbMappedFile Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Read-only memory mapping of an *.irb file of arbitrary size.
+ *
+ * A single MappedByteBuffer can cover at most 2 GB, so the file is mapped in windows of fixed size,
+ * which are mapped on demand when a region of the file is requested.
+ * Regions that span two (or more) windows are copied into a heap buffer.
+ * Only the most recently used windows are kept; older ones are released
+ * so that the address space and page cache occupied by a long recording stay bounded.
+ *
+ * All methods are thread-safe: every slice is an independent view with its own position,
+ * and already mapped windows are looked up without locking,
+ * so that many threads can read from one mapping concurrently.
+ *
+ * Slices are only valid between {@link #acquire()} and the matching {@link #release(long)}.
+ * Evicted windows, and all windows on {@link #close()}, are unmapped right away
+ * as soon as no reader that acquired the file before may still use them,
+ * so that neither file handles nor address space of a long-running process pile up until a full GC.
+ * Accessing a slice after it was released would crash the JVM instead of throwing an exception,
+ * so data that is to be kept has to be copied out of the slice before releasing it.
+ */
+public class IrbMappedFile implements IrbRandomAccess, Closeable {
+
+	/** default size of a mapped window: 256 MB */
+	public static final long DEFAULT_WINDOW_SIZE = 256L * 1024L * 1024L;
+
+	/** default number of windows to keep mapped at the same time */
+	public static final int DEFAULT_MAX_WINDOWS = 4;
+
+	/** unmaps a MappedByteBuffer; null if not supported by the runtime */
+	private static final Consumer<ByteBuffer> UNMAPPER = createUnmapper();
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final long size;
+
+	private final long windowSize;
+
+	private final int maxWindows;
+
+	/** mapped windows by window index; null if not mapped */
+	private final AtomicReferenceArray<MappedByteBuffer> windows;
+
+	/** time of last access to each window in ns */
+	private final AtomicLongArray lastAccess;
+
+	/** indices of the currently mapped windows; guarded by this */
+	private final Deque<Integer> mappedWindows = new ArrayDeque<>();
+
+	/** windows no longer mapped in {@link #windows}, but possibly still in use by readers; guarded by this */
+	private final Deque<RetiredWindow> retiredWindows = new ArrayDeque<>();
+
+	/** number of active readers by the epoch at which they acquired the file; guarded by this */
+	private final TreeMap<Long, Integer> readers = new TreeMap<>();
+
+	/** incremented whenever a window is retired; guarded by this */
+	private long epoch;
+
+	/** total number of active readers */
+	private volatile int numReaders;
+
+	private volatile boolean closed;
+
+	/** a window that was released at the given epoch; only readers that acquired the file up to then can still use it */
+	private static final class RetiredWindow {
+		final MappedByteBuffer window;
+		final long epoch;
+
+		RetiredWindow(MappedByteBuffer window, long epoch) {
+			this.window = window;
+			this.epoch = epoch;
+		}
+	}
+
+	public IrbMappedFile(String filename) throws IOException {
+		this(filename, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOWS);
+	}
+
+	/**
+	 * @param filename   file to map
+	 * @param windowSize size of a single mapped window in bytes; at most 2 GB
+	 * @param maxWindows number of windows to keep mapped at the same time
+	 * @throws IOException if the file cannot be opened
+	 */
+	public IrbMappedFile(String filename, long windowSize, int maxWindows) throws IOException {
+		if (!(new File(filename).exists())) {
+			throw new RuntimeException("File '" + filename + "' does not exists!");
+		}
+		if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+			throw new RuntimeException("window size must be in (0, " + Integer.MAX_VALUE + "], but is " + windowSize);
+		}
+		if (maxWindows < 1) {
+			throw new RuntimeException("need to keep at least one window mapped, but maxWindows=" + maxWindows);
+		}
+
+		this.file = new RandomAccessFile(filename, "r");
+		this.channel = file.getChannel();
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		this.maxWindows = maxWindows;
+
+		final long numWindows = (size + windowSize - 1) / windowSize;
+		if (numWindows > Integer.MAX_VALUE) {
+			file.close();
+			throw new RuntimeException("window size " + windowSize + " too small for file size " + size);
+		}
+		this.windows = new AtomicReferenceArray<>((int) numWindows);
+		this.lastAccess = new AtomicLongArray((int) numWindows);
+	}
+
+	/**
+	 * @return size of the mapped file in bytes
+	 */
+	@Override
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return size of a single mapped window in bytes
+	 */
+	public long windowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Start reading from the file.
+	 * Windows mapped at this time or later are not unmapped before the matching {@link #release(long)},
+	 * so all slices obtained in between stay valid until then.
+	 * Readers can be nested and used from any number of threads.
+	 *
+	 * @return token to pass to {@link #release(long)}
+	 */
+	@Override
+	public synchronized long acquire() {
+		if (closed) {
+			throw new RuntimeException("file is already closed");
+		}
+		readers.merge(epoch, 1, Integer::sum);
+		numReaders++;
+		return epoch;
+	}
+
+	/**
+	 * Stop reading from the file: slices obtained since the matching {@link #acquire()} must not be accessed anymore.
+	 * Windows that were evicted or closed in the meantime are unmapped once no other reader may still use them.
+	 *
+	 * @param token token returned by {@link #acquire()}
+	 */
+	@Override
+	public synchronized void release(long token) {
+		Integer count = readers.get(token);
+		if (count == null) {
+			throw new RuntimeException("release() without matching acquire(): " + token);
+		}
+		if (count == 1) {
+			readers.remove(token);
+		} else {
+			readers.put(token, count - 1);
+		}
+		numReaders--;
+		unmapRetiredWindows();
+	}
+
+	/**
+	 * Get a little-endian view of a region of the file.
+	 * The returned buffer has its own position and limit, starting at 0 for {@code offset} in the file.
+	 * It is valid only until the reader that is active while calling this method is {@link #release(long) released}.
+	 *
+	 * @param offset offset in the file at which the region starts
+	 * @param length length of the region in bytes
+	 * @return buffer covering the requested region
+	 */
+	@Override
+	public ByteBuffer slice(long offset, int length) {
+		if (closed) {
+			throw new RuntimeException("file is already closed");
+		}
+		if (numReaders == 0) {
+			throw new RuntimeException("need to acquire() the file before reading from it");
+		}
+		if (offset < 0 || length < 0 || offset + length > size) {
+			throw new IndexOutOfBoundsException("region [" + offset + ", " + (offset + length) + ") out of file bounds [0, " + size + ")");
+		}
+
+		final int windowIdx = (int) (offset / windowSize);
+		final long windowStart = windowIdx * windowSize;
+
+		final ByteBuffer slice;
+		if (offset + length <= windowStart + windowSize) {
+			// zero-copy view into a single window
+			ByteBuffer window = window(windowIdx).duplicate();
+			window.position((int) (offset - windowStart));
+			window.limit(window.position() + length);
+			slice = window.slice();
+		} else {
+			// region spans across window boundaries: assemble a copy
+			slice = ByteBuffer.allocate(length);
+			long position = offset;
+			while (slice.hasRemaining()) {
+				final int idx = (int) (position / windowSize);
+				ByteBuffer window = window(idx).duplicate();
+				window.position((int) (position - idx * windowSize));
+				final int numBytes = Math.min(window.remaining(), slice.remaining());
+				window.limit(window.position() + numBytes);
+				slice.put(window);
+				position += numBytes;
+			}
+			slice.flip();
+		}
+
+		return slice.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private MappedByteBuffer window(int windowIdx) {
+		lastAccess.lazySet(windowIdx, System.nanoTime());
+		MappedByteBuffer window = windows.get(windowIdx);
+		if (window == null) {
+			window = mapWindow(windowIdx);
+		}
+		return window;
+	}
+
+	private synchronized MappedByteBuffer mapWindow(int windowIdx) {
+		if (closed) {
+			throw new RuntimeException("file is already closed");
+		}
+
+		// another thread might have mapped the window in the meantime
+		MappedByteBuffer window = windows.get(windowIdx);
+		if (window != null) {
+			return window;
+		}
+
+		if (mappedWindows.size() >= maxWindows) {
+			// release the least recently used window;
+			// it is unmapped once no active reader may still use it
+			Integer leastRecentlyUsed = null;
+			for (Integer idx : mappedWindows) {
+				if (leastRecentlyUsed == null || lastAccess.get(idx) - lastAccess.get(leastRecentlyUsed) < 0) {
+					leastRecentlyUsed = idx;
+				}
+			}
+			mappedWindows.remove(leastRecentlyUsed);
+			retireWindow(leastRecentlyUsed);
+			unmapRetiredWindows();
+		}
+
+		final long windowStart = windowIdx * windowSize;
+		final long windowLength = Math.min(windowSize, size - windowStart);
+		try {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to map window at offset " + windowStart, e);
+		}
+		windows.set(windowIdx, window);
+		mappedWindows.add(windowIdx);
+		return window;
+	}
+
+	/**
+	 * Remove a window from the mapped windows; it is unmapped by {@link #unmapRetiredWindows()}.
+	 * Must be called with the lock on this held.
+	 */
+	private void retireWindow(int windowIdx) {
+		retiredWindows.add(new RetiredWindow(windows.get(windowIdx), epoch));
+		windows.set(windowIdx, null);
+		epoch++;
+	}
+
+	/**
+	 * Unmap all retired windows that no active reader acquired before their retirement.
+	 * Must be called with the lock on this held.
+	 */
+	private void unmapRetiredWindows() {
+		final Map.Entry<Long, Integer> oldestReader = readers.firstEntry();
+		final long oldestEpoch = (oldestReader == null) ? Long.MAX_VALUE : oldestReader.getKey();
+		while (!retiredWindows.isEmpty() && retiredWindows.peekFirst().epoch < oldestEpoch) {
+			unmap(retiredWindows.pollFirst().window);
+		}
+	}
+
+	/**
+	 * Unmap all windows and close the underlying file; no new readers can be started afterwards.
+	 * Windows still in use by active readers are unmapped when the last of them is {@link #release(long) released};
+	 * these readers cannot obtain new slices anymore.
+	 * All slices are invalid afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Integer idx : mappedWindows) {
+			retireWindow(idx);
+		}
+		mappedWindows.clear();
+		unmapRetiredWindows();
+		file.close();
+	}
+
+	/**
+	 * Release the memory mapping of the given buffer right away.
+	 * If the runtime does not support this, the mapping is released by the garbage collector.
+	 * Only use this if no view of the buffer can escape:
+	 * the buffer and all views of it must not be accessed anymore afterwards, otherwise the JVM crashes.
+	 *
+	 * @param buf buffer returned by {@link FileChannel#map}
+	 */
+	static void unmap(MappedByteBuffer buf) {
+		if (buf != null && UNMAPPER != null) {
+			UNMAPPER.accept(buf);
+		}
+	}
+
+	private static Consumer<ByteBuffer> createUnmapper() {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return buf -> invoke(invokeCleaner, unsafe, buf);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not available
+		}
+
+		try {
+			// Java 8
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buf -> invoke(clean, invoke(cleaner, buf));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not available
+		}
+
+		return null;
+	}
+
+	private static Object invoke(Method method, Object obj, Object... args) {
+		try {
+			return method.invoke(obj, args);
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("failed to unmap buffer", e);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/* irb
+ * IrbPaletteTable Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lookup table of the temperatures for all 65536 possible raw pixel values of a palette.
+ *
+ * In uncompressed (type 0) and run-length encoded (type 1) images, each pixel is given
+ * by an 8-bit palette index {@code v2} and an 8-bit fraction {@code v1}
+ * for the linear interpolation between neighboring palette entries.
+ * The table is indexed by the 16-bit raw value {@code (v2 << 8) | v1},
+ * which is exactly the little-endian 16-bit word of an uncompressed pixel.
+ *
+ * Tables are cached by palette contents, since the frames of a video usually share one palette.
+ */
+public class IrbPaletteTable {
+
+	/** number of entries in a lookup table: one for each 16-bit raw value */
+	public static final int SIZE = 65536;
+
+	/** number of tables to keep in the cache */
+	private static final int CACHE_SIZE = 16;
+
+	/** most recently used tables by palette contents */
+	private static final Map<PaletteKey, IrbPaletteTable> CACHE = new LinkedHashMap<PaletteKey, IrbPaletteTable>(2 * CACHE_SIZE, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<PaletteKey, IrbPaletteTable> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/** [65536] temperature for each 16-bit raw value */
+	private final float[] table;
+
+	private IrbPaletteTable(float[] palette) {
+		table = new float[SIZE];
+		for (int v2 = 0; v2 < 256; ++v2) {
+			// the last palette entry has no upper neighbor to interpolate towards
+			final float lower = palette[v2];
+			final float upper = palette[Math.min(v2 + 1, 255)];
+			for (int v1 = 0; v1 < 256; ++v1) {
+				float f = v1 / 256.0F;
+
+				// linear interpolation between neighboring palette entries
+				float v = upper * f + lower * (1.0F - f);
+				if (v < 0.0F) {
+					v = 0.0F; // or 255 ...
+				}
+
+				table[(v2 << 8) | v1] = v;
+			}
+		}
+	}
+
+	/**
+	 * Get the lookup table for the given palette, either from the cache or freshly computed.
+	 *
+	 * @param palette [256] palette of an IrbImage
+	 * @return lookup table for the given palette
+	 */
+	public static IrbPaletteTable of(float[] palette) {
+		if (palette.length != 256) {
+			throw new RuntimeException("palette must have 256 entries, but has " + palette.length);
+		}
+
+		synchronized (CACHE) {
+			IrbPaletteTable paletteTable = CACHE.get(new PaletteKey(palette));
+			if (paletteTable == null) {
+				paletteTable = new IrbPaletteTable(palette);
+
+				// keep a copy, since the palette of an IrbImage can be modified
+				CACHE.put(new PaletteKey(palette.clone()), paletteTable);
+			}
+			return paletteTable;
+		}
+	}
+
+	/**
+	 * @param raw 16-bit raw pixel value: palette index in the upper byte, fraction in the lower byte
+	 * @return temperature in Kelvin
+	 */
+	public float get(int raw) {
+		return table[raw & 0xFFFF];
+	}
+
+	/**
+	 * @return [65536] temperature for each 16-bit raw value; must not be modified
+	 */
+	float[] table() {
+		return table;
+	}
+
+	/** compares palettes by contents */
+	private static final class PaletteKey {
+
+		private final float[] palette;
+
+		private final int hashCode;
+
+		PaletteKey(float[] palette) {
+			this.palette = palette;
+			this.hashCode = Arrays.hashCode(palette);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof PaletteKey && Arrays.equals(palette, ((PaletteKey) obj).palette);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/* irb
+ * IrbPixelStatistics Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-pixel statistics of the temperature over many frames:
+ * mean, standard deviation, minimum, maximum and time of the maximum.
+ * Frames are added one at a time, so only a constant state per pixel is kept
+ * instead of all frames of a recording.
+ * The mean and variance are accumulated using Welford's algorithm;
+ * statistics of disjoint frame ranges, e.g. accumulated in parallel, can be merged.
+ */
+public class IrbPixelStatistics {
+
+	/** number of pixels per row */
+	public final int width;
+
+	/** number of rows */
+	public final int height;
+
+	/** number of frames added so far */
+	private long count;
+
+	/** earliest time of all frames added so far in ms since the epoch */
+	private long firstTime = Long.MAX_VALUE;
+
+	/** [height * width] mean temperature in Kelvin */
+	private final double[] mean;
+
+	/** [height * width] sum of squared deviations from the mean in K^2 */
+	private final double[] m2;
+
+	/** [height * width] minimum temperature in Kelvin */
+	private final float[] min;
+
+	/** [height * width] maximum temperature in Kelvin */
+	private final float[] max;
+
+	/** [height * width] time of the maximum temperature in ms since the epoch; the earliest one in case of ties */
+	private final long[] maxTime;
+
+	/**
+	 * @param width  number of pixels per row of the frames to add
+	 * @param height number of rows of the frames to add
+	 */
+	public IrbPixelStatistics(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new RuntimeException("image must not be empty, but is " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+
+		final int numPixels = width * height;
+		mean = new double[numPixels];
+		m2 = new double[numPixels];
+		min = new float[numPixels];
+		max = new float[numPixels];
+		maxTime = new long[numPixels];
+		Arrays.fill(min, Float.POSITIVE_INFINITY);
+		Arrays.fill(max, Float.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Add a frame, either decoded or read using {@link IrbImage#fromBufferRaw(java.nio.ByteBuffer, int, int)}.
+	 * The time of the frame is taken from {@link IrbImage#timestamp} and {@link IrbImage#timestampMillisecond}.
+	 *
+	 * @param image frame to add
+	 * @return this object
+	 */
+	public IrbPixelStatistics add(IrbImage image) {
+		if (image.width != width || image.height != height) {
+			throw new RuntimeException("expected a " + width + "x" + height + " frame, but got " + image.width + "x" + image.height);
+		}
+		final long time = image.timestamp.getTime() + image.timestampMillisecond;
+		if (image.pixels != null) {
+			return add(image.pixels, time);
+		}
+
+		final double invCount = startFrame(time);
+		final ShortBuffer rawPixels = image.rawPixels;
+		final int numPixels = width * height;
+		if (image.compression_type == 2) {
+			for (int i = 0; i < numPixels; ++i) {
+				update(i, (rawPixels.get(i) & 0xFFFF) / 100.0F, invCount, time);
+			}
+		} else {
+			final float[] table = image.paletteTable().table();
+			for (int i = 0; i < numPixels; ++i) {
+				update(i, table[rawPixels.get(i) & 0xFFFF], invCount, time);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Add a frame.
+	 *
+	 * @param pixels [height * width] temperatures in Kelvin; row-major: width is fast dimension
+	 * @param time   time of the frame in ms since the epoch
+	 * @return this object
+	 */
+	public IrbPixelStatistics add(float[] pixels, long time) {
+		final int numPixels = width * height;
+		if (pixels.length < numPixels) {
+			throw new RuntimeException("need " + numPixels + " pixels, but got " + pixels.length);
+		}
+
+		final double invCount = startFrame(time);
+		for (int i = 0; i < numPixels; ++i) {
+			update(i, pixels[i], invCount, time);
+		}
+		return this;
+	}
+
+	/**
+	 * Merge the statistics of another, disjoint set of frames into this one,
+	 * as if all frames of the other statistics had been added to this one.
+	 *
+	 * @param other statistics of frames of the same size
+	 * @return this object
+	 */
+	public IrbPixelStatistics merge(IrbPixelStatistics other) {
+		if (other.width != width || other.height != height) {
+			throw new RuntimeException("expected statistics of " + width + "x" + height + " frames, but got " + other.width + "x" + other.height);
+		}
+		if (other.count == 0) {
+			return this;
+		}
+
+		// Chan et al.: combine the means and the sums of squared deviations of both sets
+		final double n = count + other.count;
+		final double weight = other.count / n;
+		final double weight2 = count * (double) other.count / n;
+		for (int i = 0; i < mean.length; ++i) {
+			final double delta = other.mean[i] - mean[i];
+			mean[i] += delta * weight;
+			m2[i] += other.m2[i] + delta * delta * weight2;
+			min[i] = Math.min(min[i], other.min[i]);
+			if (other.max[i] > max[i] || (other.max[i] == max[i] && other.maxTime[i] < maxTime[i])) {
+				max[i] = other.max[i];
+				maxTime[i] = other.maxTime[i];
+			}
+		}
+		count += other.count;
+		firstTime = Math.min(firstTime, other.firstTime);
+		return this;
+	}
+
+	/**
+	 * @param time time of the next frame in ms since the epoch
+	 * @return 1 / number of frames including the next one
+	 */
+	private double startFrame(long time) {
+		count++;
+		firstTime = Math.min(firstTime, time);
+		return 1.0 / count;
+	}
+
+	private void update(int i, float value, double invCount, long time) {
+		final double delta = value - mean[i];
+		mean[i] += delta * invCount;
+		m2[i] += delta * (value - mean[i]);
+		if (value < min[i]) {
+			min[i] = value;
+		}
+		if (value > max[i]) {
+			max[i] = value;
+			maxTime[i] = time;
+		}
+	}
+
+	/**
+	 * @return number of frames added so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return earliest time of all frames added so far in ms since the epoch
+	 */
+	public long getFirstTime() {
+		return firstTime;
+	}
+
+	/**
+	 * @return [height * width] mean temperature in Kelvin
+	 */
+	public float[] getMean() {
+		float[] result = new float[mean.length];
+		for (int i = 0; i < mean.length; ++i) {
+			result[i] = (float) mean[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return [height * width] population standard deviation of the temperature in Kelvin
+	 */
+	public float[] getStandardDeviation() {
+		float[] result = new float[m2.length];
+		if (count > 0) {
+			for (int i = 0; i < m2.length; ++i) {
+				result[i] = (float) Math.sqrt(m2[i] / count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return [height * width] minimum temperature in Kelvin
+	 */
+	public float[] getMin() {
+		return min.clone();
+	}
+
+	/**
+	 * @return [height * width] maximum temperature in Kelvin
+	 */
+	public float[] getMax() {
+		return max.clone();
+	}
+
+	/**
+	 * @return [height * width] time of the maximum temperature in ms since the epoch
+	 */
+	public long[] getMaxTime() {
+		return maxTime.clone();
+	}
+
+	/**
+	 * @return [height * width] time of the maximum temperature in ms since the first frame
+	 */
+	public float[] getRelativeMaxTime() {
+		float[] result = new float[maxTime.length];
+		for (int i = 0; i < maxTime.length; ++i) {
+			result[i] = maxTime[i] - firstTime;
+		}
+		return result;
+	}
+
+	/**
+	 * Export all statistics as 2d text files, as {@link IrbImage#exportImageData(String)} does for a single image:
+	 * {@code <prefix>.mean.dat}, {@code .min.dat} and {@code .max.dat} in degree Celsius,
+	 * {@code <prefix>.std.dat} in Kelvin
+	 * and {@code <prefix>.tmax.dat} with the time of the maximum in ms since the first frame.
+	 *
+	 * @param prefix prefix of the files to write
+	 * @throws IOException if a file cannot be written
+	 */
+	public void exportData(String prefix) throws IOException {
+		IrbTextWriter.write(prefix + ".mean.dat", getMean(), width, height, IrbImage.CELSIUS_OFFSET);
+		IrbTextWriter.write(prefix + ".std.dat", getStandardDeviation(), width, height, 0.0F);
+		IrbTextWriter.write(prefix + ".min.dat", min, width, height, IrbImage.CELSIUS_OFFSET);
+		IrbTextWriter.write(prefix + ".max.dat", max, width, height, IrbImage.CELSIUS_OFFSET);
+		IrbTextWriter.write(prefix + ".tmax.dat", getRelativeMaxTime(), width, height, 0.0F);
+	}
+}
@@ -0,0 +1,143 @@
+/* irb
+ * IrbPixelTrace Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Temperature of some pixels over all video frames of a file.
+ * For uncompressed frames, the raw value of a pixel sits at a fixed offset in every frame,
+ * so only the header, palette and metadata (1728 bytes) and the requested pixels are read from each frame.
+ * Compressed frames have to be decoded as a whole.
+ */
+public class IrbPixelTrace {
+
+	/** column indices of the pixels */
+	public int[] x;
+
+	/** row indices of the pixels */
+	public int[] y;
+
+	/** [frames] time of each frame in ms since the epoch, from {@link IrbImage#timestamp} and {@link IrbImage#timestampMillisecond} */
+	public long[] times;
+
+	/** [pixels][frames] temperature of each pixel in each frame in Kelvin */
+	public float[][] temperatures;
+
+	private IrbPixelTrace() { }
+
+	/**
+	 * @param file       file to read from
+	 * @param frameIndex locations of the video frames in the file
+	 * @param x          column indices of the pixels
+	 * @param y          row indices of the pixels
+	 * @return temperature of the given pixels in all frames
+	 */
+	static IrbPixelTrace read(IrbRandomAccess file, IrbFrameIndex frameIndex, int[] x, int[] y) {
+		if (x.length != y.length) {
+			throw new RuntimeException("got " + x.length + " column indices, but " + y.length + " row indices");
+		}
+
+		final int numFrames = frameIndex.size();
+		final int numPixels = x.length;
+
+		IrbPixelTrace trace = new IrbPixelTrace();
+		trace.x = x.clone();
+		trace.y = y.clone();
+		trace.times = new long[numFrames];
+		trace.temperatures = new float[numPixels][numFrames];
+
+		for (int frameIdx = 0; frameIdx < numFrames; ++frameIdx) {
+			// the slices of a frame are only used while it is being read
+			final long token = file.acquire();
+			try {
+				final long offset = frameIndex.offset(frameIdx);
+				final int size = frameIndex.size(frameIdx);
+				IrbImage image = IrbImage.fromBuffer(file.slice(offset, IrbFrameIndex.IMAGE_METADATA_SIZE), 0, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+				trace.times[frameIdx] = image.timestamp.getTime() + image.timestampMillisecond;
+
+				for (int p = 0; p < numPixels; ++p) {
+					if (x[p] < 0 || x[p] >= image.width || y[p] < 0 || y[p] >= image.height) {
+						throw new IndexOutOfBoundsException("pixel (" + x[p] + ", " + y[p] + ") out of range of "
+								+ image.width + "x" + image.height + " frame " + frameIdx);
+					}
+				}
+
+				if (image.compression_type != 0) {
+					IrbImage raw = IrbImage.fromBufferRaw(file.slice(offset, size), 0, size);
+					for (int p = 0; p < numPixels; ++p) {
+						trace.temperatures[p][frameIdx] = raw.getPixel(x[p], y[p]);
+					}
+					continue;
+				}
+
+				if (size < IrbFrameIndex.IMAGE_METADATA_SIZE + 2 * image.width * image.height) {
+					throw new RuntimeException("frame " + frameIdx + " too small for " + image.width + "x" + image.height + " pixels: " + size + " bytes");
+				}
+
+				// consecutive pixels, e.g. along a row of a region, are read at once
+				final float[] table = image.paletteTable().table();
+				final long dataOffset = offset + IrbFrameIndex.IMAGE_METADATA_SIZE;
+				int p = 0;
+				while (p < numPixels) {
+					final int start = p;
+					final int startIdx = y[p] * image.width + x[p];
+					p++;
+					while (p < numPixels && y[p] * image.width + x[p] == startIdx + (p - start)) {
+						p++;
+					}
+
+					ByteBuffer data = file.slice(dataOffset + 2L * startIdx, 2 * (p - start));
+					for (int i = start; i < p; ++i) {
+						trace.temperatures[i][frameIdx] = table[data.getShort(2 * (i - start)) & 0xFFFF];
+					}
+				}
+			} finally {
+				file.release(token);
+			}
+		}
+
+		return trace;
+	}
+
+	/**
+	 * Export the traces to a text file: a comment line with the pixel coordinates,
+	 * followed by one line per frame with the frame index, the time since the first frame in ms
+	 * and the temperature of every pixel in degree Celsius.
+	 *
+	 * @param filename file to export the traces to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void exportData(String filename) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 64 * 1024)) {
+			StringBuilder header = new StringBuilder("# frame time[ms]");
+			for (int p = 0; p < x.length; ++p) {
+				header.append(" T(").append(x[p]).append(',').append(y[p]).append(")[degC]");
+			}
+			header.append('\n');
+			out.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+
+			// 64 bytes are more than enough for every value
+			final byte[] line = new byte[64 * (x.length + 2)];
+			for (int frameIdx = 0; frameIdx < times.length; ++frameIdx) {
+				final byte[] prefix = (frameIdx + " " + (times[frameIdx] - times[0])).getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(prefix, 0, line, 0, prefix.length);
+				int pos = prefix.length;
+				for (int p = 0; p < x.length; ++p) {
+					line[pos++] = ' ';
+					pos = IrbTextWriter.format(temperatures[p][frameIdx] - IrbImage.CELSIUS_OFFSET, line, pos);
+				}
+				line[pos++] = '\n';
+				out.write(line, 0, pos);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* irb
+ * IrbPositionalFile Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Access to an *.irb file by positional reads instead of a memory mapping.
+ * Every requested region is read into a heap buffer of its own,
+ * so this is meant for reading a few small regions per file,
+ * e.g. the headers and image metadata, without mapping the whole file into memory.
+ */
+class IrbPositionalFile implements IrbRandomAccess, Closeable {
+
+	private final FileChannel channel;
+
+	private final long size;
+
+	IrbPositionalFile(String filename) throws IOException {
+		if (!(new File(filename).exists())) {
+			throw new RuntimeException("File '" + filename + "' does not exists!");
+		}
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		this.size = channel.size();
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public ByteBuffer slice(long offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > size) {
+			throw new IndexOutOfBoundsException("region [" + offset + ", " + (offset + length) + ") out of file bounds [0, " + size + ")");
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, offset + buf.position()) < 0) {
+					throw new EOFException("unexpected end of file at offset " + (offset + buf.position()));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buf.flip();
+		return buf;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,49 @@
+/* irb
+ * IrbRandomAccess Interface
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read access to arbitrary regions of an *.irb file,
+ * as needed to follow the header blocks and frame headers through a file.
+ */
+interface IrbRandomAccess {
+
+	/**
+	 * @return size of the file in bytes
+	 */
+	long size();
+
+	/**
+	 * Start reading from the file: slices stay valid until the matching {@link #release(long)}.
+	 *
+	 * @return token to pass to {@link #release(long)}
+	 */
+	default long acquire() {
+		return 0;
+	}
+
+	/**
+	 * Stop reading from the file: slices obtained since the matching {@link #acquire()} must not be accessed anymore.
+	 *
+	 * @param token token returned by {@link #acquire()}
+	 */
+	default void release(long token) {
+		// nothing to release
+	}
+
+	/**
+	 * Get a little-endian view of a region of the file.
+	 * The returned buffer has its own position and limit, starting at 0 for {@code offset} in the file.
+	 * It is valid until the reader active while calling this method is {@link #release(long) released}.
+	 *
+	 * @param offset offset in the file at which the region starts
+	 * @param length length of the region in bytes
+	 * @return buffer covering the requested region
+	 */
+	ByteBuffer slice(long offset, int length);
+}
@@ -0,0 +1,174 @@
+/* irb
+ * IrbRegion Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rectangular region of an image, e.g. a region of interest for process monitoring.
+ * Regions are decoded from the IMAGE data without decoding the whole image:
+ * <ul>
+ * <li>uncompressed images: only the pixels of the regions are read</li>
+ * <li>compressed images: decoding stops after the last pixel of the regions</li>
+ * </ul>
+ */
+public class IrbRegion {
+
+	/** column index of the first pixel of this region */
+	public int x0;
+
+	/** row index of the first pixel of this region */
+	public int y0;
+
+	/** number of columns of this region */
+	public int width;
+
+	/** number of rows of this region */
+	public int height;
+
+	/** [height * width] temperatures in Kelvin, row-major; null if not decoded */
+	public float[] pixels;
+
+	/** minimum temperature in this region in Kelvin */
+	public float minData;
+
+	/** maximum temperature in this region in Kelvin */
+	public float maxData;
+
+	/** mean temperature in this region in Kelvin */
+	public float meanData;
+
+	/**
+	 * @param x0     column index of the first pixel of the region
+	 * @param y0     row index of the first pixel of the region
+	 * @param width  number of columns of the region
+	 * @param height number of rows of the region
+	 */
+	public IrbRegion(int x0, int y0, int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new RuntimeException("region must not be empty, but is " + width + "x" + height);
+		}
+		this.x0 = x0;
+		this.y0 = y0;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Decode some regions of the IMAGE data corresponding to this block.
+	 *
+	 * @param buf     little-endian buffer to read the image from
+	 * @param offset  position of the image in the buffer
+	 * @param size    size of the image in bytes
+	 * @param regions regions to decode
+	 * @return decoded regions with their pixels, minimum, maximum and mean, in the order of the given regions
+	 */
+	public static List<IrbRegion> fromBuffer(ByteBuffer buf, int offset, int size, List<IrbRegion> regions) {
+		IrbImage image = IrbImage.fromBuffer(buf, offset, IrbFrameIndex.IMAGE_METADATA_SIZE, true);
+		final int imageWidth = image.width;
+
+		// index of the last pixel to decode
+		int lastIdx = 0;
+		List<IrbRegion> decoded = new ArrayList<>(regions.size());
+		for (IrbRegion region : regions) {
+			if (region.x0 < 0 || region.y0 < 0 || region.x0 + region.width > image.width || region.y0 + region.height > image.height) {
+				throw new IndexOutOfBoundsException("region " + region.width + "x" + region.height + " at (" + region.x0 + ", " + region.y0
+						+ ") out of range of " + image.width + "x" + image.height + " image");
+			}
+			IrbRegion result = new IrbRegion(region.x0, region.y0, region.width, region.height);
+			result.pixels = new float[region.width * region.height];
+			decoded.add(result);
+			lastIdx = Math.max(lastIdx, (region.y0 + region.height - 1) * imageWidth + region.x0 + region.width - 1);
+		}
+
+		final int dataOffset = offset + IrbFrameIndex.IMAGE_METADATA_SIZE;
+		final float[] table = (image.compression_type == 2) ? null : image.paletteTable().table();
+		switch (image.compression_type) {
+		case 0:
+			for (IrbRegion region : decoded) {
+				for (int j = 0; j < region.height; ++j) {
+					final int rowStart = dataOffset + 2 * ((region.y0 + j) * imageWidth + region.x0);
+					for (int i = 0; i < region.width; ++i) {
+						region.pixels[j * region.width + i] = table[buf.getShort(rowStart + 2 * i) & 0xFFFF];
+					}
+				}
+			}
+			break;
+		case 1: {
+			// palette indices v2 of the pixels up to the last one; fractions v1 are read for the pixels of the regions only
+			final byte[] v2 = runLengthDecode(buf, dataOffset + image.width * image.height, image.width * image.height, lastIdx + 1);
+			for (IrbRegion region : decoded) {
+				for (int j = 0; j < region.height; ++j) {
+					final int rowStart = (region.y0 + j) * imageWidth + region.x0;
+					for (int i = 0; i < region.width; ++i) {
+						final int idx = rowStart + i;
+						region.pixels[j * region.width + i] = table[((v2[idx] & 0xFF) << 8) | (buf.get(dataOffset + idx) & 0xFF)];
+					}
+				}
+			}
+			break;
+		}
+		case 2: {
+			final short[] raw = new short[lastIdx + 1];
+			IrbDeltaDecoder.decode(buf, dataOffset, size - IrbFrameIndex.IMAGE_METADATA_SIZE, raw.length, raw, null);
+			for (IrbRegion region : decoded) {
+				for (int j = 0; j < region.height; ++j) {
+					final int rowStart = (region.y0 + j) * imageWidth + region.x0;
+					for (int i = 0; i < region.width; ++i) {
+						region.pixels[j * region.width + i] = (raw[rowStart + i] & 0xFFFF) / 100.0F;
+					}
+				}
+			}
+			break;
+		}
+		default:
+			throw new RuntimeException("unknown compression type: " + image.compression_type);
+		}
+
+		for (IrbRegion region : decoded) {
+			region.updateDataRange();
+		}
+		return decoded;
+	}
+
+	/**
+	 * @param buf          buffer to read the runs from
+	 * @param runPosition  position of the first (count, v2) pair in the buffer
+	 * @param numPixels    number of pixels in the image
+	 * @param numToDecode  number of pixels to decode from the start of the image
+	 * @return [numToDecode] palette index v2 of each pixel
+	 */
+	private static byte[] runLengthDecode(ByteBuffer buf, int runPosition, int numPixels, int numToDecode) {
+		final byte[] v2 = new byte[numToDecode];
+		int i = 0;
+		while (i < numToDecode) {
+			final int count = buf.get(runPosition) & 0xFF;
+			final byte value = buf.get(runPosition + 1);
+			runPosition += 2;
+
+			// as in IrbImage: a count of 0 extends to the end of the image
+			final int end = (count == 0) ? numPixels : i + count;
+			Arrays.fill(v2, i, Math.min(end, numToDecode), value);
+			i = end;
+		}
+		return v2;
+	}
+
+	private void updateDataRange() {
+		minData = Float.POSITIVE_INFINITY;
+		maxData = Float.NEGATIVE_INFINITY;
+		double sum = 0.0;
+		for (int i = 0; i < pixels.length; ++i) {
+			minData = Math.min(minData, pixels[i]);
+			maxData = Math.max(maxData, pixels[i]);
+			sum += pixels[i];
+		}
+		meanData = (float) (sum / pixels.length);
+	}
+}
@@ -0,0 +1,151 @@
+/* irb
+ * IrbTextWriter Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Writes image data as text, one line per image row, from the last row to the first one.
+ * Each value is written as by {@code String.format(Locale.ENGLISH, "%8.6f ", value)},
+ * but formatted directly into a byte buffer that is written through a FileChannel.
+ * All state is local to a call, so multiple images can be written in parallel.
+ */
+public class IrbTextWriter {
+
+	/** size of the output buffer in bytes */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** more than the longest formatted float value: Float.MAX_VALUE has 39 integer digits */
+	private static final int MAX_VALUE_LENGTH = 64;
+
+	/** values at or above this magnitude are formatted via {@link String#format} */
+	private static final double FAST_PATH_LIMIT = 1.0e6;
+
+	/** distance in units of 1e-6 from a rounding tie below which values are formatted via {@link String#format} */
+	private static final double TIE_MARGIN = 1.0e-3;
+
+	private static final int DECIMALS = 1000000;
+
+	private IrbTextWriter() { }
+
+	/**
+	 * Write {@code pixels[i] - offset} for all pixels of an image.
+	 *
+	 * @param filename file to write
+	 * @param pixels   [height * width] image data; row-major: width is fast dimension
+	 * @param width    number of pixels per row
+	 * @param height   number of rows
+	 * @param offset   offset to subtract from every pixel, e.g. {@link IrbImage#CELSIUS_OFFSET}
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(String filename, float[] pixels, int width, int height, float offset) throws IOException {
+		if (pixels.length < width * height) {
+			throw new RuntimeException("need " + (width * height) + " pixels, but got " + pixels.length);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			final byte[] bytes = buf.array();
+			int pos = 0;
+			for (int y = height - 1; y >= 0; --y) {
+				final int rowOffset = y * width;
+				for (int x = 0; x < width; ++x) {
+					if (pos > BUFFER_SIZE - MAX_VALUE_LENGTH) {
+						flush(channel, buf, pos);
+						pos = 0;
+					}
+					pos = format(pixels[rowOffset + x] - offset, bytes, pos);
+					bytes[pos++] = ' ';
+				}
+				if (pos == BUFFER_SIZE) {
+					flush(channel, buf, pos);
+					pos = 0;
+				}
+				bytes[pos++] = '\n';
+			}
+			flush(channel, buf, pos);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buf, int length) throws IOException {
+		buf.clear();
+		buf.limit(length);
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	/**
+	 * Format a value as by {@code String.format(Locale.ENGLISH, "%8.6f", value)}.
+	 *
+	 * The float value times 1e6 is exactly representable as a double,
+	 * so the rounding to six decimals can be decided exactly using integer arithmetic.
+	 * Values very close to a rounding tie, non-finite values and large values
+	 * are left to {@link String#format} to reproduce its rounding.
+	 *
+	 * @param value value to format
+	 * @param dst   array to write the ASCII characters into
+	 * @param pos   index in {@code dst} at which to start writing
+	 * @return index in {@code dst} after the last character written
+	 */
+	static int format(float value, byte[] dst, int pos) {
+		final double absValue = Math.abs((double) value);
+		if (!(absValue < FAST_PATH_LIMIT)) {
+			return formatSlow(value, dst, pos);
+		}
+
+		final double scaled = absValue * DECIMALS;
+		long units = (long) scaled;
+		final double fraction = scaled - units;
+		if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+			return formatSlow(value, dst, pos);
+		}
+		if (fraction > 0.5) {
+			units++;
+		}
+
+		// sign bit, as for String.format: -0.0 is formatted as "-0.000000"
+		if (Float.floatToRawIntBits(value) < 0) {
+			dst[pos++] = '-';
+		}
+
+		// integer part: at most 7 digits here
+		long integerPart = units / DECIMALS;
+		final int integerStart = pos;
+		do {
+			dst[pos++] = (byte) ('0' + integerPart % 10);
+			integerPart /= 10;
+		} while (integerPart > 0);
+		for (int i = integerStart, j = pos - 1; i < j; ++i, --j) {
+			final byte b = dst[i];
+			dst[i] = dst[j];
+			dst[j] = b;
+		}
+
+		dst[pos++] = '.';
+
+		// fractional part: exactly 6 digits
+		int fractionalPart = (int) (units % DECIMALS);
+		for (int i = pos + 5; i >= pos; --i) {
+			dst[i] = (byte) ('0' + fractionalPart % 10);
+			fractionalPart /= 10;
+		}
+		return pos + 6;
+	}
+
+	private static int formatSlow(float value, byte[] dst, int pos) {
+		final byte[] formatted = String.format(Locale.ENGLISH, "%8.6f", value).getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(formatted, 0, dst, pos, formatted.length);
+		return pos + formatted.length;
+	}
+}
@@ -1,19 +1,20 @@
 package eu.hoefel;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.FileOutputStream;
 
 import javax.imageio.ImageIO;
 
-import org.apache.commons.math3.analysis.interpolation.LinearInterpolator;
-import org.apache.commons.math3.analysis.polynomials.PolynomialSplineFunction;
-
 /**
  * Convert a 2d array into a PNG image.
  * @author Udo Hoefel
  */
 public class ArrayToPNG {
 
+	/** number of entries in the color table for interpolated colors */
+	public static final int LUT_SIZE = 4096;
+
 	/**
 	 * Dumps the array as a png file'
 	 *
@@ -35,7 +36,33 @@ public class ArrayToPNG {
 	 * @param alpha An array with the same dimensions as a containing transparency values. If null transparency will be 0.
 	 */
 	public static void dumpAsPng(float[][] a, double[][] colormap, double[][] alpha, String filename, boolean  interpolatedColors) {
-		BufferedImage image = array2Image(a, colormap, alpha, interpolatedColors);
+		dumpAsPng(flatten(a), a[0].length, a.length, colormap, alpha, filename, interpolatedColors);
+	}
+
+	/**
+	 * Dumps the flat array as a png file'
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param filename The name of the image file.
+	 */
+	public static void dumpAsPng(float[] a, int width, int height, String filename) {
+		dumpAsPng(a, width, height, null, null, filename, true);
+	}
+
+	/**
+	 * Dumps the flat array as a png file, using a specified (optional) colormap and (optional) transparency alpha.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param colormap A 3xm array, of [0,1] values. colormap[0][i] is red, colormap[1][i] green, colormap[2][i] blue.
+	 * @param alpha An array with [height][width] containing transparency values. If null transparency will be 0.
+	 * @see #dumpAsPng(float[][], double[][], double[][], String, boolean)
+	 */
+	public static void dumpAsPng(float[] a, int width, int height, double[][] colormap, double[][] alpha, String filename, boolean  interpolatedColors) {
+		BufferedImage image = array2Image(a, width, height, colormap, alpha, interpolatedColors);
 
 		try(FileOutputStream file = new FileOutputStream(filename)) {
 			ImageIO.write(image, "png", file);
@@ -44,6 +71,84 @@ public class ArrayToPNG {
 		}
 	}
 
+	/**
+	 * Dumps the flat array as a png file using the given encoder instead of ImageIO.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param colormap A 3xm array, of [0,1] values. colormap[0][i] is red, colormap[1][i] green, colormap[2][i] blue.
+	 * @param alpha An array with [height][width] containing transparency values. If null transparency will be 0.
+	 * @param encoder The encoder with the deflate level and row filter to use
+	 * @see #dumpAsPng(float[], int, int, double[][], double[][], String, boolean)
+	 */
+	public static void dumpAsPng(float[] a, int width, int height, double[][] colormap, double[][] alpha, String filename, boolean  interpolatedColors, PngEncoder encoder) {
+		BufferedImage image = array2Image(a, width, height, colormap, alpha, interpolatedColors);
+		encoder.writeArgb(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), width, height, filename);
+	}
+
+	/**
+	 * Dumps the flat array as a png file using the given encoder, with the range of the data already known,
+	 * e.g. from decoding it, so that the array is not scanned for its minimum and maximum again.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param minval The minimum of the array, mapped to the first color of the colormap
+	 * @param maxval The maximum of the array, mapped to the last color of the colormap
+	 * @param encoder The encoder with the deflate level and row filter to use
+	 * @see #dumpAsPng(float[], int, int, double[][], double[][], String, boolean, PngEncoder)
+	 */
+	public static void dumpAsPng(float[] a, int width, int height, double minval, double maxval, double[][] colormap, double[][] alpha, String filename, boolean  interpolatedColors, PngEncoder encoder) {
+		BufferedImage image = array2Image(a, width, height, minval, maxval, colormap, alpha, interpolatedColors);
+		encoder.writeArgb(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), width, height, filename);
+	}
+
+	/**
+	 * Dumps the flat array as an 8-bit indexed png file with a palette of 256 colors from the colormap.
+	 * This is smaller and faster to write than an RGB image.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param colormap A 3xm array, of [0,1] values. colormap[0][i] is red, colormap[1][i] green, colormap[2][i] blue. Can be null (default; jet-like).
+	 * @param filename The name of the image file.
+	 * @param interpolatedColors true: interpolate colormap linearly; false: find nearest color; NaN is mapped to first entry in colormap
+	 * @param encoder The encoder with the deflate level and row filter to use
+	 */
+	public static void dumpAsIndexedPng(float[] a, int width, int height, double[][] colormap, String filename, boolean interpolatedColors, PngEncoder encoder) {
+		double maxval = a[0];
+		double minval = a[0];
+		for (int i=0; i<a.length; ++i) {
+			if (a[i] > maxval) { maxval = a[i]; }
+			if (a[i] < minval) { minval = a[i]; }
+		}
+		dumpAsIndexedPng(a, width, height, minval, maxval, colormap, filename, interpolatedColors, encoder);
+	}
+
+	/**
+	 * Dumps the flat array as an 8-bit indexed png file, with the range of the data already known.
+	 *
+	 * @param minval The minimum of the array, mapped to the first color of the colormap
+	 * @param maxval The maximum of the array, mapped to the last color of the colormap
+	 * @see #dumpAsIndexedPng(float[], int, int, double[][], String, boolean, PngEncoder)
+	 */
+	public static void dumpAsIndexedPng(float[] a, int width, int height, double minval, double maxval, double[][] colormap, String filename, boolean interpolatedColors, PngEncoder encoder) {
+		if (colormap == null) colormap = COLORMAP1;
+
+		final int numColors = 256;
+		final int[] palette = interpolatedColors ? interpolatedColorTable(colormap, numColors) : nearestColorTable(colormap, numColors);
+
+		final double scale = (maxval > minval) ? (numColors - 1) / (maxval - minval) : 0.0;
+		final byte[] indices = new byte[width*height];
+		for (int i=0; i<width*height; ++i) {
+			final double val = a[i];
+			indices[i] = Double.isNaN(val) ? 0 : (byte) Math.max(0, Math.min(numColors - 1, (int) ((val - minval) * scale + 0.5)));
+		}
+
+		encoder.writeIndexed(indices, width, height, palette, filename);
+	}
+
 	/**
 	 * Creates an image from an array using a specified (optional) colormap and (optional) transparency alpha.
 	 * The corresponding colors to the values in the array will be linearly interpolated
@@ -57,80 +162,144 @@ public class ArrayToPNG {
 	 * @return A BufferedImage object that can be later saved with for example ImageIO.write(image, "PNG", new File("my.png"));
 	 */
 	public static BufferedImage array2Image(float[][] a, double[][] colormap, double[][] alpha, boolean interpolatedColors) {
-		double maxval = a[0][0];
-		double minval = a[0][0];
+		return array2Image(flatten(a), a[0].length, a.length, colormap, alpha, interpolatedColors);
+	}
+
+	/**
+	 * Creates an image from a flat array using a specified (optional) colormap and (optional) transparency alpha.
+	 * Interpolated colors are looked up in a table of {@link #LUT_SIZE} colors evenly spaced over the range of the data.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param colormap [3][m] values in the range [0,1]. colormap[0][i] is red, colormap[1][i] green, colormap[2][i] blue. Can be null (default; jet-like).
+	 * @param alpha An array with [height][width] containing transparency values. If null transparency will be 0.
+	 * @param interpolatedColors true: interpolate colormap linearly; false: find nearest color; NaN is mapped to first entry in colormap
+	 * @return A BufferedImage object
+	 * @see #array2Image(float[][], double[][], double[][], boolean)
+	 */
+	public static BufferedImage array2Image(float[] a, int width, int height, double[][] colormap, double[][] alpha, boolean interpolatedColors) {
+		double maxval = a[0];
+		double minval = a[0];
 		for (int i=0; i<a.length; ++i) {
-			for (int j=0; j<a[i].length; ++j) {
-				if (a[i][j] > maxval) { maxval = a[i][j]; }
-				if (a[i][j] < minval) { minval = a[i][j]; }
-			}
+			if (a[i] > maxval) { maxval = a[i]; }
+			if (a[i] < minval) { minval = a[i]; }
 		}
+		return array2Image(a, width, height, minval, maxval, colormap, alpha, interpolatedColors);
+	}
 
+	/**
+	 * Creates an image from a flat array, with the range of the data already known.
+	 *
+	 * @param minval The minimum of the array, mapped to the first color of the colormap
+	 * @param maxval The maximum of the array, mapped to the last color of the colormap
+	 * @see #array2Image(float[], int, int, double[][], double[][], boolean)
+	 */
+	public static BufferedImage array2Image(float[] a, int width, int height, double minval, double maxval, double[][] colormap, double[][] alpha, boolean interpolatedColors) {
 		if (colormap == null) colormap = COLORMAP1;
 
-		final double[] rescaledRangeR = new double[colormap[0].length];
-		final double[] rescaledRangeG = new double[colormap[1].length];
-		final double[] rescaledRangeB = new double[colormap[2].length];
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB/*BufferedImage.TYPE_INT_RGB*/);
+
+		// TYPE_INT_ARGB stores exactly the value passed to setRGB, so write into the backing array directly
+		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		int MAXINT = 255;
+
+		// without alpha array, all pixels are opaque: include alpha in the tabulated colors
+		final int opaque = (alpha == null) ? (MAXINT << 24) : 0;
 
-		double deltaValueR = (maxval-minval)/(colormap[0].length - 1.0);
-		double deltaValueG = (maxval-minval)/(colormap[1].length - 1.0);
-		double deltaValueB = (maxval-minval)/(colormap[2].length - 1.0);
+		// color of the first colormap entry, used for NaN
+		final int nanColor = opaque | rgb(colormap, 0, 0, 0);
 
-		for (int i=0; i<colormap[0].length; ++i) {
-			rescaledRangeR[i] = minval + i*deltaValueR;
+		// colors of LUT_SIZE values evenly spaced between minval and maxval
+		final int[] lut = interpolatedColors ? interpolatedColorTable(colormap, LUT_SIZE) : nearestColorTable(colormap, LUT_SIZE);
+		for (int k=0; k<LUT_SIZE; ++k) {
+			lut[k] |= opaque;
 		}
-		for (int i=0; i<colormap[1].length; ++i) {
-			rescaledRangeG[i] = minval + i*deltaValueG;
+
+		final double lutScale = (maxval > minval) ? (LUT_SIZE - 1) / (maxval - minval) : 0.0;
+		for (int i=0; i<width*height; ++i) {
+			final double val = a[i];
+			pixels[i] = Double.isNaN(val) ? nanColor : lut[Math.max(0, Math.min(LUT_SIZE - 1, (int) ((val - minval) * lutScale + 0.5)))];
 		}
-		for (int i=0; i<colormap[2].length; ++i) {
-			rescaledRangeB[i] = minval + i*deltaValueB;
+
+		if (alpha != null) {
+			for (int i=0; i<height; ++i) {
+				for (int j=0; j<width; ++j) {
+					int al = (int) (alpha[i][j]*MAXINT);
+					pixels[i*width+j] |= (al << 24);
+				}
+			}
 		}
 
-		LinearInterpolator linearInterpolator = new LinearInterpolator();
-        PolynomialSplineFunction rmap = linearInterpolator.interpolate(rescaledRangeR, colormap[0]);
-        PolynomialSplineFunction gmap = linearInterpolator.interpolate(rescaledRangeR, colormap[1]);
-        PolynomialSplineFunction bmap = linearInterpolator.interpolate(rescaledRangeR, colormap[2]);
+		return image;
+	}
+
+	/**
+	 * @return 0x00RRGGBB of the given colormap entries
+	 */
+	private static int rgb(double[][] colormap, int indexR, int indexG, int indexB) {
+		int MAXINT = 255;
+		int r = (int) (colormap[0][indexR]*MAXINT);
+		int g = (int) (colormap[1][indexG]*MAXINT);
+		int b = (int) (colormap[2][indexB]*MAXINT);
+		return (r << 16) | (g << 8) | b;
+	}
 
-		BufferedImage image = new BufferedImage(a[0].length, a.length, BufferedImage.TYPE_INT_ARGB/*BufferedImage.TYPE_INT_RGB*/);
+	/**
+	 * Tabulate the nearest colors of the colormap.
+	 *
+	 * @param colormap [3][m] values in the range [0,1]
+	 * @param size number of table entries
+	 * @return [size] 0x00RRGGBB colors evenly spaced over the whole colormap
+	 */
+	static int[] nearestColorTable(double[][] colormap, int size) {
+		int[] table = new int[size];
+		for (int k=0; k<size; ++k) {
+			table[k] = rgb(colormap,
+					(int) Math.round(k * (colormap[0].length - 1.0) / (size - 1.0)),
+					(int) Math.round(k * (colormap[1].length - 1.0) / (size - 1.0)),
+					(int) Math.round(k * (colormap[2].length - 1.0) / (size - 1.0)));
+		}
+		return table;
+	}
 
+	/**
+	 * Tabulate the colors of the linearly interpolated colormap.
+	 *
+	 * @param colormap [3][m] values in the range [0,1]
+	 * @param size number of table entries
+	 * @return [size] 0x00RRGGBB colors evenly spaced over the whole colormap
+	 */
+	static int[] interpolatedColorTable(double[][] colormap, int size) {
 		int MAXINT = 255;
-		for(int i=0;i<a.length;++i) {
-			for(int j=0;j<a[0].length;++j) {
-				boolean isNaN = Double.isNaN(a[i][j]);
-				double val = isNaN ? 0 : a[i][j];
-				int r=0, g=0,b=0;
-				if (interpolatedColors) {
-					r = (int) (rmap.value(val)*MAXINT);
-					g = (int) (gmap.value(val)*MAXINT);
-					b = (int) (bmap.value(val)*MAXINT);
-				} else {
-					int indexR = 0;
-					int indexG = 0;
-					int indexB = 0;
-					if (isNaN) {
-						indexR = 0;
-						indexG = 0;
-						indexB = 0;
-					} else {
-						indexR = (int) Math.round(Math.abs((val-minval)/(maxval-minval)*(colormap[0].length-1)));
-						indexG = (int) Math.round(Math.abs((val-minval)/(maxval-minval)*(colormap[1].length-1)));
-						indexB = (int) Math.round(Math.abs((val-minval)/(maxval-minval)*(colormap[2].length-1)));
-					}
-					if (indexR >= colormap[0].length) { indexR = colormap[0].length-1; }
-					if (indexG >= colormap[1].length) { indexG = colormap[1].length-1; }
-					if (indexB >= colormap[2].length) { indexB = colormap[2].length-1; }
-					r = (int) (colormap[0][indexR]*MAXINT);
-					g = (int) (colormap[1][indexG]*MAXINT);
-					b = (int) (colormap[2][indexB]*MAXINT);
-				}
-				int al = (int) ((alpha == null ? MAXINT : alpha[i][j]*MAXINT));
-				int color = (al << 24) | (r << 16) | (g << 8) | b;
-				//int color = (r << 16) | (g << 8) | b;
-				image.setRGB(j, i, color);
+		int[] table = new int[size];
+		for (int k=0; k<size; ++k) {
+			int rgb = 0;
+			for (int c=0; c<3; ++c) {
+				// position in colormap; the colormap entries are evenly spaced over the data range
+				final double t = k * (colormap[c].length - 1.0) / (size - 1.0);
+				final int index = Math.min((int) t, colormap[c].length - 2);
+				final double f = t - index;
+				final double value = (index < 0) ? colormap[c][0] : colormap[c][index] * (1.0 - f) + colormap[c][index+1] * f;
+				rgb = (rgb << 8) | (int) (value*MAXINT);
 			}
+			table[k] = rgb;
 		}
+		return table;
+	}
 
-		return image;
+	/**
+	 * @param a [height][width] array
+	 * @return [height * width] row-major copy of a
+	 */
+	private static float[] flatten(float[][] a) {
+		final int width = a[0].length;
+		float[] flat = new float[a.length * width];
+		for (int i=0; i<a.length; ++i) {
+			System.arraycopy(a[i], 0, flat, i*width, width);
+		}
+		return flat;
 	}
 
 	/**
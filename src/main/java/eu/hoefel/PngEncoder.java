@@ -0,0 +1,448 @@
+package eu.hoefel;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes PNG images with a selectable deflate level and row filter.
+ * Supports 8-bit RGB(A) images from ARGB pixels, 8-bit indexed images with a palette
+ * and 16-bit grayscale images.
+ *
+ * An encoder only holds its settings, so it can be shared between threads.
+ * Each thread reuses its own Deflater and buffers for all images it writes,
+ * until it calls {@link #end()} to release them.
+ */
+public class PngEncoder {
+
+	/** PNG row filter to apply before compression */
+	public enum Filter {
+		NONE(0), SUB(1), UP(2), AVERAGE(3), PAETH(4),
+
+		/** choose the filter with the smallest sum of absolute differences per row, as recommended by the PNG specification */
+		ADAPTIVE(-1);
+
+		final int type;
+
+		Filter(int type) {
+			this.type = type;
+		}
+	}
+
+	/** fast compression with a filter that works well for smooth images */
+	public static final PngEncoder DEFAULT = new PngEncoder(Deflater.BEST_SPEED, Filter.UP);
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final int COLOR_TYPE_GRAY = 0;
+	private static final int COLOR_TYPE_RGB = 2;
+	private static final int COLOR_TYPE_INDEXED = 3;
+	private static final int COLOR_TYPE_RGBA = 6;
+
+	/** Deflater and buffers of the current thread */
+	private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+	private final int level;
+
+	private final Filter filter;
+
+	/**
+	 * @param level deflate level: 0 (no compression) to 9 (best compression)
+	 * @param filter row filter to apply before compression
+	 */
+	public PngEncoder(int level, Filter filter) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("deflate level must be in [0, 9], but is " + level);
+		}
+		this.level = level;
+		this.filter = filter;
+	}
+
+	/**
+	 * @return deflate level
+	 */
+	public int level() {
+		return level;
+	}
+
+	/**
+	 * @return row filter
+	 */
+	public Filter filter() {
+		return filter;
+	}
+
+	/**
+	 * Release the Deflater and buffers of the current thread right away instead of leaving the native zlib memory
+	 * to the garbage collector. Call this when a thread that wrote images is done, e.g. at the end of a worker thread.
+	 * The thread can still write images afterwards; it then allocates new ones.
+	 */
+	public static void end() {
+		State state = STATE.get();
+		if (state != null) {
+			STATE.remove();
+			state.deflater.end();
+		}
+	}
+
+	/**
+	 * @return Deflater and buffers of the current thread
+	 */
+	private static State state() {
+		State state = STATE.get();
+		if (state == null) {
+			state = new State();
+			STATE.set(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Write an image given as ARGB pixels, e.g. from the DataBufferInt of a BufferedImage of TYPE_INT_ARGB.
+	 * If all pixels are opaque, an RGB image is written, otherwise an RGBA image.
+	 *
+	 * @param argb [height * width] pixels as 0xAARRGGBB; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param filename file to write
+	 */
+	public void writeArgb(int[] argb, int width, int height, String filename) {
+		try (OutputStream out = new FileOutputStream(filename)) {
+			writeArgb(argb, width, height, out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param argb [height * width] pixels as 0xAARRGGBB; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param out stream to write the PNG data to
+	 * @throws IOException if the data cannot be written
+	 * @see #writeArgb(int[], int, int, String)
+	 */
+	public void writeArgb(int[] argb, int width, int height, OutputStream out) throws IOException {
+		boolean opaque = true;
+		for (int i = 0; i < width * height && opaque; ++i) {
+			opaque = (argb[i] >>> 24) == 0xFF;
+		}
+
+		final int bytesPerPixel = opaque ? 3 : 4;
+		State state = state();
+		state.begin(this, width * bytesPerPixel, bytesPerPixel);
+		for (int y = 0; y < height; ++y) {
+			final byte[] row = state.row;
+			int pos = 0;
+			for (int x = 0; x < width; ++x) {
+				final int color = argb[y * width + x];
+				row[pos++] = (byte) (color >>> 16);
+				row[pos++] = (byte) (color >>> 8);
+				row[pos++] = (byte) color;
+				if (!opaque) {
+					row[pos++] = (byte) (color >>> 24);
+				}
+			}
+			state.addRow();
+		}
+
+		writePng(state, out, width, height, 8, opaque ? COLOR_TYPE_RGB : COLOR_TYPE_RGBA, null);
+	}
+
+	/**
+	 * Write an 8-bit indexed image.
+	 *
+	 * @param indices [height * width] palette index of every pixel; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param palette [at most 256] colors as 0x00RRGGBB
+	 * @param filename file to write
+	 */
+	public void writeIndexed(byte[] indices, int width, int height, int[] palette, String filename) {
+		try (OutputStream out = new FileOutputStream(filename)) {
+			writeIndexed(indices, width, height, palette, out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param indices [height * width] palette index of every pixel; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param palette [at most 256] colors as 0x00RRGGBB
+	 * @param out stream to write the PNG data to
+	 * @throws IOException if the data cannot be written
+	 * @see #writeIndexed(byte[], int, int, int[], String)
+	 */
+	public void writeIndexed(byte[] indices, int width, int height, int[] palette, OutputStream out) throws IOException {
+		if (palette.length < 1 || palette.length > 256) {
+			throw new IllegalArgumentException("palette must have 1 to 256 entries, but has " + palette.length);
+		}
+
+		State state = state();
+		state.begin(this, width, 1);
+		for (int y = 0; y < height; ++y) {
+			System.arraycopy(indices, y * width, state.row, 0, width);
+			state.addRow();
+		}
+
+		byte[] plte = new byte[3 * palette.length];
+		for (int i = 0; i < palette.length; ++i) {
+			plte[3 * i] = (byte) (palette[i] >>> 16);
+			plte[3 * i + 1] = (byte) (palette[i] >>> 8);
+			plte[3 * i + 2] = (byte) palette[i];
+		}
+
+		writePng(state, out, width, height, 8, COLOR_TYPE_INDEXED, plte);
+	}
+
+	/**
+	 * Write a 16-bit grayscale image.
+	 *
+	 * @param values [height * width] unsigned 16-bit values; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param filename file to write
+	 */
+	public void writeGray16(short[] values, int width, int height, String filename) {
+		try (OutputStream out = new FileOutputStream(filename)) {
+			writeGray16(values, width, height, out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param values [height * width] unsigned 16-bit values; row-major
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param out stream to write the PNG data to
+	 * @throws IOException if the data cannot be written
+	 * @see #writeGray16(short[], int, int, String)
+	 */
+	public void writeGray16(short[] values, int width, int height, OutputStream out) throws IOException {
+		State state = state();
+		state.begin(this, 2 * width, 2);
+		for (int y = 0; y < height; ++y) {
+			final byte[] row = state.row;
+			for (int x = 0; x < width; ++x) {
+				// PNG stores 16-bit samples big-endian
+				final short value = values[y * width + x];
+				row[2 * x] = (byte) (value >>> 8);
+				row[2 * x + 1] = (byte) value;
+			}
+			state.addRow();
+		}
+
+		writePng(state, out, width, height, 16, COLOR_TYPE_GRAY, null);
+	}
+
+	private static void writePng(State state, OutputStream out, int width, int height, int bitDepth, int colorType, byte[] plte) throws IOException {
+		state.finish();
+
+		out.write(SIGNATURE);
+
+		byte[] ihdr = new byte[13];
+		putInt(ihdr, 0, width);
+		putInt(ihdr, 4, height);
+		ihdr[8] = (byte) bitDepth;
+		ihdr[9] = (byte) colorType;
+		// compression method, filter method and interlace method: 0
+
+		writeChunk(state, out, "IHDR", ihdr, ihdr.length);
+		if (plte != null) {
+			writeChunk(state, out, "PLTE", plte, plte.length);
+		}
+		writeChunk(state, out, "IDAT", state.compressed, state.compressedLength);
+		writeChunk(state, out, "IEND", ihdr, 0);
+	}
+
+	private static void writeChunk(State state, OutputStream out, String type, byte[] data, int length) throws IOException {
+		final byte[] header = state.chunkHeader;
+		putInt(header, 0, length);
+		for (int i = 0; i < 4; ++i) {
+			header[4 + i] = (byte) type.charAt(i);
+		}
+
+		CRC32 crc = state.crc;
+		crc.reset();
+		crc.update(header, 4, 4);
+		crc.update(data, 0, length);
+
+		out.write(header, 0, 8);
+		out.write(data, 0, length);
+		putInt(header, 0, (int) crc.getValue());
+		out.write(header, 0, 4);
+	}
+
+	private static void putInt(byte[] b, int pos, int value) {
+		b[pos] = (byte) (value >>> 24);
+		b[pos + 1] = (byte) (value >>> 16);
+		b[pos + 2] = (byte) (value >>> 8);
+		b[pos + 3] = (byte) value;
+	}
+
+	/**
+	 * Deflater and buffers reused by one thread for all images it writes.
+	 */
+	private static final class State {
+
+		final Deflater deflater = new Deflater();
+
+		final CRC32 crc = new CRC32();
+
+		final byte[] chunkHeader = new byte[8];
+
+		Filter filter;
+
+		int bytesPerPixel;
+
+		/** unfiltered bytes of the current row */
+		byte[] row = new byte[0];
+
+		/** unfiltered bytes of the previous row; zero before the first row */
+		byte[] previousRow = new byte[0];
+
+		/** filter type byte followed by the filtered bytes of the current row, for each filter type */
+		byte[][] filtered = new byte[5][1];
+
+		/** compressed image data */
+		byte[] compressed = new byte[64 * 1024];
+
+		int compressedLength;
+
+		void begin(PngEncoder encoder, int rowLength, int bytesPerPixel) {
+			this.filter = encoder.filter;
+			this.bytesPerPixel = bytesPerPixel;
+
+			if (row.length != rowLength) {
+				row = new byte[rowLength];
+				previousRow = new byte[rowLength];
+				filtered = new byte[5][rowLength + 1];
+				for (int type = 0; type < 5; ++type) {
+					filtered[type][0] = (byte) type;
+				}
+			} else {
+				Arrays.fill(previousRow, (byte) 0);
+			}
+
+			deflater.reset();
+			deflater.setLevel(encoder.level);
+			deflater.setStrategy(encoder.filter == Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+			compressedLength = 0;
+		}
+
+		/** filter and compress the current row */
+		void addRow() {
+			final byte[] out;
+			if (filter == Filter.ADAPTIVE) {
+				int best = 0;
+				long bestSum = Long.MAX_VALUE;
+				for (int type = 0; type < 5; ++type) {
+					final long sum = applyFilter(type);
+					if (sum < bestSum) {
+						bestSum = sum;
+						best = type;
+					}
+				}
+				out = filtered[best];
+			} else {
+				applyFilter(filter.type);
+				out = filtered[filter.type];
+			}
+
+			deflater.setInput(out, 0, out.length);
+			while (!deflater.needsInput()) {
+				deflate();
+			}
+
+			final byte[] swap = previousRow;
+			previousRow = row;
+			row = swap;
+		}
+
+		void finish() {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+		}
+
+		private void deflate() {
+			if (compressedLength == compressed.length) {
+				compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+			}
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+
+		/**
+		 * @return sum of the absolute values of the filtered bytes, interpreted as signed
+		 */
+		private long applyFilter(int type) {
+			final byte[] cur = row;
+			final byte[] prev = previousRow;
+			final byte[] out = filtered[type];
+			final int bpp = bytesPerPixel;
+			final int n = cur.length;
+			long sum = 0;
+			switch (type) {
+			case 0:
+				System.arraycopy(cur, 0, out, 1, n);
+				if (filter == Filter.ADAPTIVE) {
+					for (int i = 0; i < n; ++i) {
+						sum += Math.abs(cur[i]);
+					}
+				}
+				return sum;
+			case 1:
+				for (int i = 0; i < n; ++i) {
+					final int left = (i >= bpp) ? cur[i - bpp] : 0;
+					out[i + 1] = (byte) (cur[i] - left);
+				}
+				break;
+			case 2:
+				for (int i = 0; i < n; ++i) {
+					out[i + 1] = (byte) (cur[i] - prev[i]);
+				}
+				break;
+			case 3:
+				for (int i = 0; i < n; ++i) {
+					final int left = (i >= bpp) ? (cur[i - bpp] & 0xFF) : 0;
+					out[i + 1] = (byte) (cur[i] - ((left + (prev[i] & 0xFF)) >>> 1));
+				}
+				break;
+			default:
+				for (int i = 0; i < n; ++i) {
+					final int a = (i >= bpp) ? (cur[i - bpp] & 0xFF) : 0;
+					final int b = prev[i] & 0xFF;
+					final int c = (i >= bpp) ? (prev[i - bpp] & 0xFF) : 0;
+					out[i + 1] = (byte) (cur[i] - paeth(a, b, c));
+				}
+				break;
+			}
+			if (filter == Filter.ADAPTIVE) {
+				for (int i = 1; i <= n; ++i) {
+					sum += Math.abs(out[i]);
+				}
+			}
+			return sum;
+		}
+
+		private static int paeth(int a, int b, int c) {
+			final int p = a + b - c;
+			final int pa = Math.abs(p - a);
+			final int pb = Math.abs(p - b);
+			final int pc = Math.abs(p - c);
+			if (pa <= pb && pa <= pc) {
+				return a;
+			} else if (pb <= pc) {
+				return b;
+			}
+			return c;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/* irb
+ * TestCli Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.labathome.irb.IrbFile;
+import de.labathome.irb.IrbFileType;
+import de.labathome.irb.IrbGenerator;
+import de.labathome.irb.IrbTextWriter;
+
+public class TestCli {
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	void testPipelineFailures() throws Exception {
+		final String filename = new File(tempDir, "video.irb").getAbsolutePath();
+		new IrbGenerator(IrbFileType.VARIOCAM, 32, 24, 0).write(filename, 20);
+
+		final String missingDir = new File(tempDir, "missing").getAbsolutePath();
+		Set<Integer> written = ConcurrentHashMap.newKeySet();
+		try (IrbFile irbFile = IrbFile.open(filename)) {
+			final int numFrames = irbFile.getFrameCount();
+			final PrintStream discard = new PrintStream(new ByteArrayOutputStream());
+			FrameExportPipeline pipeline = new FrameExportPipeline(1, 1, discard, discard)
+					.addWriter("error", 1, frame -> {
+						throw new OutOfMemoryError("frame " + frame.frameIdx);
+					})
+					.addWriter("dat", 2, frame -> IrbTextWriter.write(missingDir + "/frame" + frame.suffix + ".dat",
+							frame.celsiusPixels, frame.image.width, frame.image.height, 0.0F))
+					.addWriter("count", 1, frame -> written.add(frame.frameIdx));
+
+			// a writer failing with an Error must not stop it from draining its queue, which would block the decoder
+			Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+				Assertions.assertEquals(2 * numFrames, pipeline.run(irbFile, 0, numFrames, frameIdx -> "_" + frameIdx));
+			});
+			Assertions.assertEquals(numFrames, written.size());
+
+			// several decoders, one of them the calling thread, and a per-thread end action of the writers
+			written.clear();
+			AtomicInteger endedThreads = new AtomicInteger();
+			FrameExportPipeline parallel = new FrameExportPipeline(2, 3, discard, discard)
+					.addWriter("count", 4, frame -> Assertions.assertTrue(written.add(frame.frameIdx)), endedThreads::incrementAndGet);
+			Assertions.assertEquals(0, parallel.run(irbFile, 3, numFrames, frameIdx -> "_" + frameIdx));
+			Assertions.assertEquals(numFrames - 3, written.size());
+			Assertions.assertEquals(4, endedThreads.get());
+		}
+	}
+
+	@Test
+	void testCollectFiles() throws Exception {
+		final String dir = tempDir.getAbsolutePath();
+		final String a = dir + File.separator + "a.irb";
+		final String b = dir + File.separator + "sub" + File.separator + "b.irb";
+		final String c = dir + File.separator + "sub" + File.separator + "c.txt";
+		final String d = dir + File.separator + "sub" + File.separator + "deep" + File.separator + "d.IRB";
+		for (String filename : Arrays.asList(a, b, c, d)) {
+			new File(filename).getParentFile().mkdirs();
+			Files.write(new File(filename).toPath(), new byte[0]);
+		}
+
+		Assertions.assertTrue(BatchProcessor.isSingleFile(a));
+		Assertions.assertFalse(BatchProcessor.isSingleFile(dir));
+		Assertions.assertFalse(BatchProcessor.isSingleFile(dir + "/*.irb"));
+
+		// directories are searched recursively for *.irb files, case-insensitively
+		Assertions.assertEquals(Arrays.asList(a, b, d), BatchProcessor.collectFiles(Arrays.asList(dir)));
+
+		// "**/" also matches files directly in the directory the pattern starts with
+		Assertions.assertEquals(Arrays.asList(a, b), BatchProcessor.collectFiles(Arrays.asList(dir + "/**/*.irb")));
+		Assertions.assertEquals(Arrays.asList(b), BatchProcessor.collectFiles(Arrays.asList(dir + "/sub/*.irb")));
+		Assertions.assertEquals(Arrays.asList(b, d), BatchProcessor.collectFiles(Arrays.asList(dir + "/sub/**/*.{irb,IRB}")));
+		Assertions.assertEquals(Arrays.asList(), BatchProcessor.collectFiles(Arrays.asList(dir + "/missing/**/*.irb")));
+
+		// inputs keep their order, files are only listed once and missing files are kept to show up as failures
+		final String missing = dir + File.separator + "missing.irb";
+		List<String> files = BatchProcessor.collectFiles(Arrays.asList(b, missing, dir + "/**/*.irb"));
+		Assertions.assertEquals(Arrays.asList(b, missing, a), files);
+	}
+}
@@ -15,6 +15,9 @@ import aliceinnets.python.jyplot.JyPlot;
 public class DemoIrb {
 	public static void main(String[] args) throws IOException {
 
+		// print what is found while parsing
+		IrbDiagnostics.setListener(IrbDiagnosticsListener.STDOUT);
+
 		final String folder;
 		if (args.length > 0) {
 			folder = args[0];
@@ -100,7 +103,7 @@ public class DemoIrb {
 
 //		final String filename = folder + "image.irb"; // from https://github.com/gadomski/irb-rs/blob/main/data/image.irb
 
-		IrbFile irbFile = IrbFile.fromFile(filename);
+		IrbFile irbFile = IrbFile.open(filename);
 
 		for (IrbTextInfo textInfo: irbFile.textInfos) {
 			System.out.println("### TEXT_INFO start ###");
@@ -138,22 +141,17 @@ public class DemoIrb {
 	        imageIndex++;
 		}
 
-		if (irbFile.frames != null) {
-			// is video file
-			for (int frameIdx = 0; frameIdx < 10; ++frameIdx) {
-				IrbFile frame = irbFile.frames.get(frameIdx);
-
-				int imageInFrame = 0;
-				for (IrbImage image: frame.images) {
-			        plt.figure();
-			        plt.imshow(image.getCelsiusImage(), "cmap='jet'");
-//			        plt.imshow(image.getCelsiusImage(), "cmap='gist_ncar'");
-//			        plt.imshow(image.getCelsiusImage(), "cmap='nipy_spectral'");
-			        plt.colorbar();
-			        plt.title(String.format("frame %d, image %d", frameIdx, imageInFrame));
-
-			        imageInFrame++;
-				}
+		if (irbFile.getFrameCount() > 1) {
+			// is video file: frames are only decoded when requested
+			for (int frameIdx = 0; frameIdx < Math.min(10, irbFile.getFrameCount()); ++frameIdx) {
+				IrbImage image = irbFile.getFrame(frameIdx);
+
+		        plt.figure();
+		        plt.imshow(image.getCelsiusImage(), "cmap='jet'");
+//		        plt.imshow(image.getCelsiusImage(), "cmap='gist_ncar'");
+//		        plt.imshow(image.getCelsiusImage(), "cmap='nipy_spectral'");
+		        plt.colorbar();
+		        plt.title(String.format("frame %d", frameIdx));
 			}
 		}
 
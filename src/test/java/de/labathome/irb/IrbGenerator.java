@@ -0,0 +1,482 @@
+/* irb
+ * IrbGenerator Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes synthetic *.irb files in the layouts read by {@link IrbFile}, {@link IrbImage} and {@link IrbFrameHeader},
+ * so that large videos can be tested and benchmarked without proprietary data:
+ * <ul>
+ * <li>IRBACS: a single IMAGE block</li>
+ * <li>VARIOCAM: an IMAGE block and a FRAME_HEADER block, followed by the chain of frame headers and frames for videos</li>
+ * <li>oSaveIRB: a front matter image, followed by appended frames as described in docs/notes.txt</li>
+ * </ul>
+ * Frames are encoded and written one after another, so files of many GB can be generated.
+ * The image shows a vertical gradient with a hot spot that moves from frame to frame, plus some noise and sparse outliers.
+ */
+public class IrbGenerator {
+
+	/** \ff I R B \0 */
+	private static final byte[] MAGIC_ID = { (byte) 0xff, (byte) 0x49, (byte) 0x52, (byte) 0x42, (byte) 0x0 };
+
+	/** 2014-01-14 18:28:48 as OLE automation date, i.e., days since 1899-12-30 */
+	private static final double START_TIMESTAMP = 41653.77;
+
+	/** time between two frames in ms */
+	private static final int FRAME_INTERVAL_MS = 20;
+
+	/** size of the TEXT_INFO block of appended oSaveIRB frames */
+	private static final int O_SAVE_IRB_TEXT_INFO_SIZE = 2176;
+
+	/** largest palette index word: v2 = 254 still has palette[v2 + 1] to interpolate to */
+	private static final int MAX_LEVEL = 0xFEFF;
+
+	private final IrbFileType fileType;
+
+	private final int width;
+
+	private final int height;
+
+	private final int compressionType;
+
+	private float[] palette;
+
+	private long seed = 42;
+
+	/**
+	 * @param fileType        IMAGE, VARIOCAM or O_SAVE_IRB
+	 * @param width           number of pixels per row
+	 * @param height          number of rows
+	 * @param compressionType 0 (uncompressed), 1 (run-length encoded palette indices) or 2 (delta encoded temperatures);
+	 *                        oSaveIRB files only support uncompressed frames
+	 */
+	public IrbGenerator(IrbFileType fileType, int width, int height, int compressionType) {
+		if (fileType == IrbFileType.SEQUENCE) {
+			throw new RuntimeException("file type " + fileType + " is not supported");
+		}
+		if (width < 1 || width > 10000 || height < 1 || height > 10000) {
+			throw new RuntimeException("width (" + width + ") or height (" + height + ") out-of-range");
+		}
+		if (compressionType < 0 || compressionType > 2) {
+			throw new RuntimeException("unknown compression type: " + compressionType);
+		}
+		if (fileType == IrbFileType.O_SAVE_IRB && compressionType != 0) {
+			throw new RuntimeException("oSaveIRB files only support uncompressed frames, but compression type is " + compressionType);
+		}
+		this.fileType = fileType;
+		this.width = width;
+		this.height = height;
+		this.compressionType = compressionType;
+
+		// -40 to 120 deg. Celsius, like the calibration range of the test resources
+		this.palette = new float[256];
+		for (int i = 0; i < 256; ++i) {
+			palette[i] = 233.15F + i * 160.0F / 255.0F;
+		}
+	}
+
+	/**
+	 * @param palette 256 temperatures in Kelvin for the palette indices
+	 * @return this generator
+	 */
+	public IrbGenerator palette(float[] palette) {
+		if (palette.length != 256) {
+			throw new RuntimeException("palette needs 256 entries, but has " + palette.length);
+		}
+		this.palette = palette.clone();
+		return this;
+	}
+
+	/**
+	 * @param seed seed for the noise in the images
+	 * @return this generator
+	 */
+	public IrbGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param frameIdx 0-based frame index
+	 * @return raw 16-bit pixel values of the given frame as in {@link IrbImage#rawPixels}:
+	 *         palette index words for compression types 0 and 1, temperature in units of 0.01 K for compression type 2
+	 */
+	public short[] rawPixels(int frameIdx) {
+		Random random = new Random(seed * 31 + frameIdx);
+
+		// hot spot moves across the image within 100 frames
+		final double centerX = width * (0.25 + 0.005 * (frameIdx % 100));
+		final double centerY = height * 0.5;
+		final double radius = 0.2 * Math.min(width, height) + 1.0;
+
+		final float[] table = (compressionType == 2) ? IrbPaletteTable.of(palette).table() : null;
+		final short[] raw = new short[width * height];
+		for (int y = 0; y < height; ++y) {
+			final double dy = (y - centerY) / radius;
+			for (int x = 0; x < width; ++x) {
+				final double dx = (x - centerX) / radius;
+				final double r2 = dx * dx + dy * dy;
+				double level = 0.2 + 0.3 * y / height;
+				if (r2 < 1.0) {
+					level += 0.4 * (1.0 - r2);
+				}
+				int index = (int) (level * MAX_LEVEL) + random.nextInt(64) - 32;
+				if (random.nextInt(64) == 0) {
+					// sparse outliers, e.g. reflections, which need long codes in delta encoded images
+					index += random.nextInt(0x2000) - 0x1000;
+				}
+				index = Math.max(0, Math.min(MAX_LEVEL, index));
+				if (table != null) {
+					raw[y * width + x] = (short) Math.max(0, Math.min(0xFFFF, Math.round(table[index] * 100.0F)));
+				} else {
+					raw[y * width + x] = (short) index;
+				}
+			}
+		}
+		return raw;
+	}
+
+	/**
+	 * @param frameIdx 0-based frame index
+	 * @return IrbImage block of the given frame: header, palette, metadata and pixel data; little-endian and positioned at 0
+	 */
+	public ByteBuffer image(int frameIdx) {
+		final byte[] data = encode(rawPixels(frameIdx));
+		ByteBuffer buf = ByteBuffer.allocate(IrbFrameIndex.IMAGE_METADATA_SIZE + data.length).order(ByteOrder.LITTLE_ENDIAN);
+		putImageMetadata(buf, frameIdx);
+		buf.put(data);
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Write a file with the given number of frames.
+	 *
+	 * @param filename   file to write
+	 * @param frameCount number of frames; must be 1 for IRBACS files
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String filename, int frameCount) throws IOException {
+		if (frameCount < 1 || (fileType == IrbFileType.IMAGE && frameCount != 1)) {
+			throw new RuntimeException("invalid number of frames for file type " + fileType + ": " + frameCount);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (fileType == IrbFileType.O_SAVE_IRB) {
+				writeOSaveIrb(channel, frameCount);
+			} else {
+				writeImageBlocks(channel, frameCount);
+			}
+		}
+	}
+
+	/** IRBACS and VARIOCAM: first frame in an IMAGE block, further frames chained by frame headers */
+	private void writeImageBlocks(FileChannel channel, int frameCount) throws IOException {
+		final ByteBuffer firstImage = image(0);
+		final int blockCount = (frameCount > 1) ? 2 : 1;
+		final long imageOffset = 64 + blockCount * 32;
+
+		ByteBuffer head = allocate(64 + blockCount * 32);
+		putFileHeader(head, fileType, blockCount);
+		putHeaderBlock(head, IrbBlockType.IMAGE, 101, imageOffset, firstImage.limit());
+		if (frameCount > 1) {
+			putHeaderBlock(head, IrbBlockType.FRAME_HEADER, 101, imageOffset + firstImage.limit(), 64);
+		}
+		write(channel, head);
+		write(channel, firstImage);
+
+		if (frameCount > 1) {
+			for (int frameIdx = 1; frameIdx < frameCount; ++frameIdx) {
+				final ByteBuffer image = image(frameIdx);
+				final long headerPosition = channel.position();
+				final long offset = headerPosition + 64;
+				write(channel, frameHeader(frameIdx + 1, offset, image.limit(), offset + image.limit() + 64));
+				write(channel, image);
+			}
+
+			// last frame header points to itself
+			final long offset = channel.position() + 64;
+			write(channel, frameHeader(frameCount + 1, offset, 0, offset));
+		}
+	}
+
+	/** oSaveIRB: front matter image, then complete IRB files appended for every frame; the last one without image */
+	private void writeOSaveIrb(FileChannel channel, int frameCount) throws IOException {
+		ByteBuffer head = allocate(64 + 32);
+		putFileHeader(head, IrbFileType.O_SAVE_IRB, 1);
+		putHeaderBlock(head, IrbBlockType.FRAME_HEADER, 101, 96, 64);
+		write(channel, head);
+		write(channel, frameHeader(1, 0, 0, 1));
+		write(channel, image(0));
+
+		final int imageSize = IrbFrameIndex.IMAGE_METADATA_SIZE + 2 * width * height;
+		final int textInfoOffset = 64 + 4 * 32 + IrbFrameIndex.IMAGE_METADATA_SIZE;
+		final int frameHeadSize = textInfoOffset + O_SAVE_IRB_TEXT_INFO_SIZE + 2 * 32;
+		for (int frameIdx = 0; frameIdx <= frameCount; ++frameIdx) {
+			final long position = channel.position();
+			final boolean hasImage = frameIdx < frameCount;
+
+			ByteBuffer frameHead = allocate(hasImage ? frameHeadSize : frameHeadSize - 2 * 32);
+			putFileHeader(frameHead, IrbFileType.VARIOCAM, 4);
+			putHeaderBlock(frameHead, IrbBlockType.IMAGE, 101, 64 + 4 * 32, imageSize);
+			putHeaderBlock(frameHead, IrbBlockType.TEXT_INFO, 100, textInfoOffset, O_SAVE_IRB_TEXT_INFO_SIZE);
+			putHeaderBlock(frameHead, IrbBlockType.EMPTY, 100, 0, 0);
+			putHeaderBlock(frameHead, IrbBlockType.EMPTY, 100, 0, 0);
+			putImageMetadata(frameHead, frameIdx);
+			final byte[] textInfo = "[Merge]\r\n".getBytes(StandardCharsets.US_ASCII);
+			frameHead.put(textInfo);
+			frameHead.position(frameHead.position() + O_SAVE_IRB_TEXT_INFO_SIZE - textInfo.length);
+			if (hasImage) {
+				putHeaderBlock(frameHead, IrbBlockType.IMAGE, 101, position + frameHeadSize, imageSize);
+				putHeaderBlock(frameHead, IrbBlockType.FRAME_HEADER, 101, position + frameHeadSize + imageSize, 64);
+			}
+			frameHead.flip();
+			write(channel, frameHead);
+
+			if (hasImage) {
+				write(channel, image(frameIdx));
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buf) throws IOException {
+		if (buf.position() > 0) {
+			buf.flip();
+		}
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	/** 64 bytes; see {@link IrbFileHeader#fromBuffer(ByteBuffer)} */
+	private static void putFileHeader(ByteBuffer buf, IrbFileType fileType, int blockCount) {
+		final byte[] fileTypeBytes = fileType.content().getBytes(StandardCharsets.US_ASCII);
+		buf.put(MAGIC_ID);
+		buf.put(fileTypeBytes);
+		buf.put(fileTypeBytes);
+		buf.putInt(100);
+		buf.putInt(64);
+		buf.putInt(blockCount);
+		buf.position(buf.position() + 31);
+	}
+
+	/** 32 bytes; see {@link IrbHeaderBlock#fromBuffer(ByteBuffer)}; offset and size are stored modulo 4 GB */
+	private static void putHeaderBlock(ByteBuffer buf, IrbBlockType blockType, int dword2, long offset, long size) {
+		final boolean isEmpty = blockType == IrbBlockType.EMPTY;
+		buf.putInt(blockType.value());
+		buf.putInt(dword2);
+		buf.putInt(isEmpty ? 0 : 1);
+		buf.putInt((int) offset);
+		buf.putInt((int) size);
+		buf.putInt(0);
+		buf.putInt(0);
+		buf.putInt(0);
+	}
+
+	/** 64 bytes; see {@link IrbFrameHeader#fromBuffer(ByteBuffer, int, int)}; offsets are stored modulo 4 GB */
+	private static ByteBuffer frameHeader(int frameCounter, long offset, int size, long expectedNextOffset) {
+		ByteBuffer buf = allocate(64);
+		buf.putInt(1);
+		buf.putInt(101);
+		buf.putInt(frameCounter);
+		buf.putInt((int) offset);
+		buf.putInt(size);
+		buf.putInt(0);
+		buf.putInt(1);
+		buf.putInt(0);
+		buf.putInt(4);
+		buf.putInt(101);
+		buf.putInt(frameCounter);
+		buf.putInt((int) expectedNextOffset);
+		buf.putInt(size);
+		buf.putInt(0);
+		buf.putInt(1);
+		buf.putInt(0);
+		return buf;
+	}
+
+	/** header (60 bytes), palette (1024 bytes) and metadata (644 bytes) of an IrbImage */
+	private void putImageMetadata(ByteBuffer buf, int frameIdx) {
+		final float calibRangeMin = palette[0];
+		final float calibRangeMax = palette[255];
+
+		// header
+		buf.putShort((short) 2);
+		buf.putShort((short) compressionType);
+		buf.putShort((short) width);
+		buf.putShort((short) height);
+		buf.putInt(0);
+		buf.putShort((short) 0);
+		buf.putShort((short) (width - 1));
+		buf.putShort((short) 0);
+		buf.putShort((short) (height - 1));
+		buf.putShort((short) 0);
+		buf.putShort((short) 0);
+		buf.putFloat(0.95F); // emissivity
+		buf.putFloat(1.0F); // distance
+		buf.putFloat(298.15F); // environmentalTemp
+		buf.putShort((short) 0);
+		buf.putShort((short) 0);
+		buf.putFloat(298.15F); // pathTemperature
+		buf.putShort((short) 0x65);
+		buf.putShort((short) 0);
+		buf.putFloat(9.5F); // centerWavelength
+		buf.putShort((short) 0);
+		buf.putShort((short) 0x4080);
+		buf.putShort((short) 0x9);
+		buf.putShort((short) 0x101);
+
+		// palette
+		for (int i = 0; i < 256; ++i) {
+			buf.putFloat(palette[i]);
+		}
+
+		// metadata; only the fields read by IrbImage are filled in
+		final int start = buf.position();
+		final long timeMs = (long) frameIdx * FRAME_INTERVAL_MS;
+		buf.putFloat(start + 92, calibRangeMin);
+		buf.putFloat(start + 96, calibRangeMax);
+		putString(buf, start + 142, "SYNTHETIC", 12);
+		putString(buf, start + 164, "0", 16);
+		putString(buf, start + 202, "synthetic", 32);
+		buf.putFloat(start + 532, calibRangeMin);
+		buf.putFloat(start + 536, calibRangeMax - calibRangeMin);
+		buf.putDouble(start + 540, START_TIMESTAMP + (timeMs / 1000) / 86400.0);
+		buf.putInt(start + 548, (int) (timeMs % 1000));
+		buf.position(start + 644);
+	}
+
+	private static void putString(ByteBuffer buf, int position, String value, int length) {
+		final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < Math.min(bytes.length, length); ++i) {
+			buf.put(position + i, bytes[i]);
+		}
+	}
+
+	/**
+	 * @param raw raw 16-bit pixel values
+	 * @return pixel data of an IrbImage with the compression type of this generator
+	 */
+	private byte[] encode(short[] raw) {
+		switch (compressionType) {
+		case 0:
+			return encodeUncompressed(raw);
+		case 1:
+			return encodeRunLength(raw);
+		default:
+			return encodeDelta(raw);
+		}
+	}
+
+	/** little-endian 16-bit words: fraction v1 in the low byte, palette index v2 in the high byte */
+	private static byte[] encodeUncompressed(short[] raw) {
+		final byte[] data = new byte[2 * raw.length];
+		for (int i = 0; i < raw.length; ++i) {
+			data[2 * i] = (byte) raw[i];
+			data[2 * i + 1] = (byte) (raw[i] >>> 8);
+		}
+		return data;
+	}
+
+	/** all fractions v1, followed by (count, v2) pairs of the runs of palette indices, with count at most 255 */
+	private static byte[] encodeRunLength(short[] raw) {
+		final int n = raw.length;
+
+		// at most one run per pixel
+		final byte[] data = new byte[3 * n];
+		for (int i = 0; i < n; ++i) {
+			data[i] = (byte) raw[i];
+		}
+		int pos = n;
+		for (int i = 0; i < n;) {
+			final int v2 = (raw[i] >>> 8) & 0xFF;
+			int runLength = 1;
+			while (i + runLength < n && ((raw[i + runLength] >>> 8) & 0xFF) == v2 && runLength < 255) {
+				runLength++;
+			}
+			data[pos++] = (byte) runLength;
+			data[pos++] = (byte) v2;
+			i += runLength;
+		}
+		return Arrays.copyOf(data, pos);
+	}
+
+	/**
+	 * First value as 16-bit literal, followed by the deltas to the previous value
+	 * as MSB-first bit codes in 16-bit little-endian words:
+	 * 8 bits for small deltas, 8 + 11 bits for large ones.
+	 * The decoder reads ahead by one word, so one word of padding is appended.
+	 */
+	private static byte[] encodeDelta(short[] raw) {
+		final int n = raw.length;
+
+		// at most 19 bits per pixel, plus first value and padding
+		final byte[] data = new byte[2 + (19 * n + 15) / 16 * 2 + 2];
+		data[0] = (byte) raw[0];
+		data[1] = (byte) (raw[0] >>> 8);
+		int pos = 2;
+
+		long bitBuffer = 0;
+		int numBits = 0;
+		for (int i = 1; i < n; ++i) {
+			final int delta = (raw[i] & 0xFFFF) - (raw[i - 1] & 0xFFFF);
+			final int u = (delta >= 0) ? 2 * delta : -2 * delta + 1;
+			if (u < 192) {
+				bitBuffer = (bitBuffer << 8) | u;
+				numBits += 8;
+			} else {
+				bitBuffer = (bitBuffer << 19) | (u + 192 * 2047);
+				numBits += 19;
+			}
+			while (numBits >= 16) {
+				numBits -= 16;
+				final int word = (int) (bitBuffer >>> numBits) & 0xFFFF;
+				data[pos++] = (byte) word;
+				data[pos++] = (byte) (word >>> 8);
+			}
+			bitBuffer &= (1L << numBits) - 1;
+		}
+		if (numBits > 0) {
+			final int word = (int) (bitBuffer << (16 - numBits)) & 0xFFFF;
+			data[pos++] = (byte) word;
+			data[pos++] = (byte) (word >>> 8);
+		}
+		pos += 2;
+		return Arrays.copyOf(data, pos);
+	}
+
+	/**
+	 * Generate a file from the command line.
+	 *
+	 * @param args file type (IMAGE, VARIOCAM or O_SAVE_IRB), compression type, width, height, number of frames, output file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 6) {
+			System.out.println("usage: IrbGenerator <IMAGE|VARIOCAM|O_SAVE_IRB> <compressionType> <width> <height> <frameCount> <filename>");
+			return;
+		}
+
+		final long startTime = System.nanoTime();
+		new IrbGenerator(IrbFileType.valueOf(args[0]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[1]))
+				.write(args[5], Integer.parseInt(args[4]));
+		System.out.printf("wrote %s (%d bytes) in %.1f s\n", args[5], Paths.get(args[5]).toFile().length(), (System.nanoTime() - startTime) / 1.0e9);
+	}
+}
@@ -0,0 +1,142 @@
+/* irb
+ * IrbReferenceDeltaDecoder Class
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package de.labathome.irb;
+
+/**
+ * The original decoder for the pixel data of compression type 2, which reads the stream bit by bit.
+ * It is only kept as a reference for {@link IrbDeltaDecoder}.
+ */
+final class IrbReferenceDeltaDecoder {
+
+	private IrbReferenceDeltaDecoder() { }
+
+	// Put a simple container around the bit-buffer logic so the core stays readable.
+	// This reader refills from 16-bit little-endian words and exposes MSB-first bits.
+	private static final class BitReaderLE16MSB {
+		// Underlying byte array (compressed stream)
+		private final byte[] data;
+		// Current byte position in 'data' (advanced by 2 on each 16-bit refill)
+		private int pos;
+		// 32-bit shift register used as a left-shifting buffer
+		private int buf;
+		// Number of valid bits currently in 'buf'
+		private int bits;
+
+		// Construct a reader that starts at 'offset' bytes into 'data'
+		BitReaderLE16MSB(byte[] data, int offset) {
+			this.data = data;
+			this.pos = offset;
+			this.buf = 0;
+			this.bits = 0;
+		}
+
+		// Refill 'buf' with one 16-bit little-endian word if fewer than 16 bits are present.
+		// The new 16 bits are aligned to the high side of 'buf' so that future MSB-first reads work.
+		private void refill16() {
+			if (bits < 16 && pos + 1 < data.length) {
+				int lo = data[pos] & 0xFF;
+				int hi = data[pos + 1] & 0xFF;
+				int w = lo | (hi << 8);
+				pos += 2;
+				// Align the just-read 16 bits to the high side of the 32-bit buffer
+				buf = ((w << (16 - bits)) & 0xFFFFFFFF) | buf;
+				bits += 16;
+			}
+		}
+
+		// Read exactly 8 bits as an unsigned byte, MSB-first from 'buf'.
+		int read8() {
+			if (bits < 16) {
+				refill16();
+			}
+			if (bits < 8) {
+				throw new IllegalArgumentException("Unexpected end of stream while reading 8 bits");
+			}
+			int out = (buf >>> 24) & 0xFF;
+			buf = (buf << 8);
+			bits -= 8;
+			return out;
+		}
+
+		// Read 'n' bits (1..24) as an unsigned integer, MSB-first from 'buf'.
+		int readBits(int n) {
+			if (n <= 0 || n > 24) {
+				throw new IllegalArgumentException("readBits width out of range: " + n);
+			}
+			while (bits < n) {
+				refill16();
+				if (bits < n && pos + 1 >= data.length) {
+					throw new IllegalArgumentException("Unexpected end of stream while reading " + n + " bits");
+				}
+			}
+			int out = (buf >>> (32 - n)) & ((1 << n) - 1);
+			buf = (buf << n);
+			bits -= n;
+			return out;
+		}
+	}
+
+	/**
+	 * Decode the pixel data of an image into raw 16-bit values.
+	 *
+	 * @param compressed pixel data, starting with the first pixel
+	 * @param n          number of pixels to decode
+	 * @return [n] raw 16-bit values, i.e., temperatures in units of 0.01 K
+	 * @throws IllegalArgumentException if the pixel data ends before all pixels are decoded
+	 */
+	static short[] decode(byte[] compressed, int n) {
+		if (compressed.length < 2) {
+			throw new IllegalArgumentException("Unexpected end of stream while reading first pixel");
+		}
+		short[] raw = new short[n];
+
+		// Read the first pixel as a 16-bit little-endian literal
+		final int p0 = ((compressed[1] & 0xFF) << 8) | (compressed[0] & 0xFF);
+		raw[0] = (short) p0;
+
+		// Prepare to decode the remaining (n - 1) deltas
+		final BitReaderLE16MSB br = new BitReaderLE16MSB(compressed, 2);
+
+		// Set up the prefix threshold and the extended-code parameters
+		// prefix values 0..191 are "short" deltas
+		final int THRESH = 192;
+		// extended payload width
+		final int EXT_BITS = 11;
+		final int EXT_MAX = (1 << EXT_BITS) - 1;
+		// subtraction bias applied to extended codes
+		final int BIAS = THRESH * EXT_MAX;
+
+		// Track previous sample to reconstruct absolute values from deltas
+		int prev = p0;
+
+		// Iterate over all remaining pixels
+		for (int i = 1; i < n; i++) {
+			// Read the 8-bit prefix
+			int prefix = br.read8();
+
+			// Compute the unsigned delta token 'u' (short or extended)
+			int u;
+			if (prefix < THRESH) {
+				u = prefix;
+			} else {
+				// Read the extended payload, then unbias
+				int ext = br.readBits(EXT_BITS);
+				u = ((prefix << EXT_BITS) | ext) - BIAS;
+			}
+
+			// Convert unsigned token to signed delta using the codec's even/odd rule
+			int d = u >>> 1;
+			if ((u & 1) != 0) {
+				d = -d;
+			}
+
+			// Accumulate delta with wrap to 16-bit
+			prev = (prev + d) & 0xFFFF;
+			raw[i] = (short) prev;
+		}
+		return raw;
+	}
+}
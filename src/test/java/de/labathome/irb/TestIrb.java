@@ -5,18 +5,62 @@
 
 package de.labathome.irb;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.hoefel.ArrayToPNG;
+import eu.hoefel.PngEncoder;
+import eu.hoefel.ReferenceArrayToPNG;
 
 public class TestIrb {
 
+	@TempDir
+	File tempDir;
+
+	/**
+	 * Write a synthetic file into the temporary directory of the test.
+	 *
+	 * @param generator  generator to write the file with
+	 * @param frameCount number of frames
+	 * @return absolute path of the generated file
+	 * @throws IOException if the file cannot be written
+	 */
+	private String generate(IrbGenerator generator, int frameCount) throws IOException {
+		// a new file every time, since files opened before may still be mapped
+		File generated = File.createTempFile("irb", ".irb", tempDir);
+		generator.write(generated.getAbsolutePath(), frameCount);
+		return generated.getAbsolutePath();
+	}
+
 	@Test
 	void testIrbFileHeader() throws IOException {
 		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
@@ -72,7 +116,7 @@ public class TestIrb {
 
 			// --------------
 
-			IrbImage image = IrbImage.fromBuffer(buf, headerBlocks[0].offset, headerBlocks[0].size, false);
+			IrbImage image = IrbImage.fromBuffer(buf, (int) headerBlocks[0].offset, (int) headerBlocks[0].size, false);
 
 			// image header
 			Assertions.assertEquals(2, image.bytesPerPixel);
@@ -100,24 +144,889 @@ public class TestIrb {
 			Assertions.assertEquals("JENOPTIK Laser, Optik, Systeme GmbH : VC HiRes", image.opticsText);
 
 			// actual image data
-			Assertions.assertEquals(480, image.data.length);
-			Assertions.assertEquals(640, image.data[0].length);
+			Assertions.assertEquals(480 * 640, image.pixels.length);
+			Assertions.assertEquals(640, image.getStride());
+			Assertions.assertEquals(480, image.getData().length);
+			Assertions.assertEquals(640, image.getData()[0].length);
+			Assertions.assertEquals(image.pixels[479 * 640 + 17], image.getData()[479][17]);
+			Assertions.assertEquals(image.pixels[479 * 640 + 17], image.getPixel(17, 479));
 			Assertions.assertEquals(296.5852F, image.minData);
 			Assertions.assertEquals(311.3182F, image.maxData);
 
 			// --------------
 
-			IrbPreview preview = IrbPreview.fromBuffer(buf, headerBlocks[1].offset, headerBlocks[1].size);
+			IrbPreview preview = IrbPreview.fromBuffer(buf, (int) headerBlocks[1].offset, (int) headerBlocks[1].size);
 
 			// further tests missing for now...
 			Assertions.assertNotNull(preview);
 
 			// --------------
 
-			IrbTextInfo textInfo = IrbTextInfo.fromBuffer(buf, headerBlocks[2].offset, headerBlocks[2].size);
+			IrbTextInfo textInfo = IrbTextInfo.fromBuffer(buf, (int) headerBlocks[2].offset, (int) headerBlocks[2].size);
 
 			Assertions.assertEquals("[Settings]\r\nRMI=PPP1\r\n", textInfo.textInfo);
 		}
 	}
 
+	@Test
+	void testFrameIndex() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		IrbFile eager = IrbFile.fromFile(filename);
+		try (IrbFile lazy = IrbFile.open(filename)) {
+			// a single image is a video with a single frame
+			Assertions.assertEquals(1, lazy.getFrameCount());
+			Assertions.assertEquals(5216, lazy.getFrameIndex().offset(0));
+			Assertions.assertEquals(616128, lazy.getFrameIndex().size(0));
+
+			IrbImage expected = eager.images.get(0);
+			IrbImage frame = lazy.getFrame(0);
+			Assertions.assertEquals(expected.minData, frame.minData);
+			Assertions.assertEquals(expected.maxData, frame.maxData);
+			Assertions.assertArrayEquals(expected.pixels, frame.pixels);
+
+			List<IrbImage> frames = lazy.getFrames(2);
+			Assertions.assertEquals(1, frames.size());
+			Assertions.assertArrayEquals(expected.pixels, frames.get(0).pixels);
+
+			Assertions.assertEquals(1, lazy.frameStream(true).count());
+			Assertions.assertArrayEquals(expected.pixels, lazy.frameIterator().next().pixels);
+
+			Assertions.assertThrows(IndexOutOfBoundsException.class, () -> lazy.getFrame(1));
+		}
+	}
+
+	@Test
+	void testFrameStream() throws IOException {
+		final int frameCount = 37;
+		final String generated = generate(new IrbGenerator(IrbFileType.VARIOCAM, 32, 24, 1), frameCount);
+
+		try (IrbFile irbFile = IrbFile.open(generated)) {
+			List<IrbImage> expected = new ArrayList<>();
+			for (int frameIdx = 0; frameIdx < frameCount; ++frameIdx) {
+				expected.add(irbFile.getFrame(frameIdx));
+			}
+
+			// parallel streams keep the order of the frames
+			assertSameImages(expected, irbFile.frameStream(true).collect(Collectors.toList()));
+			assertSameImages(expected, irbFile.frameStream(false).collect(Collectors.toList()));
+			List<IrbImage> raw = irbFile.rawFrameStream(true).collect(Collectors.toList());
+			Assertions.assertEquals(frameCount, raw.size());
+			for (int frameIdx = 0; frameIdx < frameCount; ++frameIdx) {
+				raw.get(frameIdx).decodeRawPixels();
+			}
+			assertSameImages(expected, raw);
+
+			// splitting hands out the first half and keeps the second one
+			Spliterator<IrbImage> suffix = irbFile.frameSpliterator();
+			Assertions.assertTrue(suffix.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED));
+			Assertions.assertEquals(frameCount, suffix.estimateSize());
+			Spliterator<IrbImage> prefix = suffix.trySplit();
+			Assertions.assertEquals(frameCount / 2, prefix.estimateSize());
+			Assertions.assertEquals(frameCount - frameCount / 2, suffix.estimateSize());
+
+			// split again after consuming a frame: only the remaining frames are split
+			List<IrbImage> frames = new ArrayList<>();
+			Assertions.assertTrue(prefix.tryAdvance(frames::add));
+			Spliterator<IrbImage> middle = prefix.trySplit();
+			Assertions.assertEquals(frameCount / 2 - 1, middle.estimateSize() + prefix.estimateSize());
+			middle.forEachRemaining(frames::add);
+			prefix.forEachRemaining(frames::add);
+			suffix.forEachRemaining(frames::add);
+			Assertions.assertFalse(suffix.tryAdvance(frames::add));
+			Assertions.assertEquals(0, suffix.estimateSize());
+			assertSameImages(expected, frames);
+
+			// small ranges are not split
+			Spliterator<IrbImage> small = irbFile.frameSpliterator();
+			while (small.estimateSize() > 3) {
+				small.tryAdvance(frame -> { });
+			}
+			Assertions.assertNull(small.trySplit());
+		}
+	}
+
+	/**
+	 * @param expected images in the expected order
+	 * @param actual   images to check
+	 */
+	private static void assertSameImages(List<IrbImage> expected, List<IrbImage> actual) {
+		Assertions.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			Assertions.assertEquals(expected.get(i).timestamp, actual.get(i).timestamp);
+			Assertions.assertEquals(expected.get(i).timestampMillisecond, actual.get(i).timestampMillisecond);
+			Assertions.assertArrayEquals(expected.get(i).pixels, actual.get(i).pixels);
+		}
+	}
+
+	@Test
+	void testEagerReader() throws IOException {
+		final File folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile());
+
+		// the eager reader expects the next frame header right where the decoder stopped reading
+		List<String> filenames;
+		try (Stream<Path> paths = Files.walk(folder.toPath())) {
+			filenames = paths.map(Path::toString).filter(name -> name.endsWith(".irb")).sorted().collect(Collectors.toList());
+		}
+		Assertions.assertTrue(filenames.size() > 1);
+		for (String filename : filenames) {
+			assertSameFrames(IrbFile.fromFile(filename), filename);
+		}
+
+		for (int compressionType = 0; compressionType <= 2; ++compressionType) {
+			final String generated = generate(new IrbGenerator(IrbFileType.VARIOCAM, 48, 32, compressionType), 11);
+			IrbFile eager = IrbFile.fromFile(generated);
+			Assertions.assertEquals(11, eager.images.size());
+			assertSameFrames(eager, generated);
+		}
+	}
+
+	/**
+	 * Check that the frames read eagerly from a file are those read lazily.
+	 *
+	 * @param eager    file read using {@link IrbFile#fromFile(String)}
+	 * @param filename file to read lazily
+	 * @throws IOException if the file cannot be read
+	 */
+	private static void assertSameFrames(IrbFile eager, String filename) throws IOException {
+		try (IrbFile lazy = IrbFile.open(filename)) {
+			Assertions.assertEquals(lazy.getFrameCount(), eager.images.size(), filename);
+			for (int frameIdx = 0; frameIdx < eager.images.size(); ++frameIdx) {
+				IrbImage expected = eager.images.get(frameIdx);
+				IrbImage frame = lazy.getFrame(frameIdx);
+				Assertions.assertEquals(expected.timestamp, frame.timestamp, filename);
+				Assertions.assertArrayEquals(expected.pixels, frame.pixels, filename);
+			}
+		}
+	}
+
+	@Test
+	void testFileInfo() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		IrbImage expected = IrbFile.fromFile(filename).images.get(0);
+		IrbFileInfo info = IrbFileInfo.scan(filename, true);
+
+		Assertions.assertEquals(IrbFileType.VARIOCAM, info.header.fileType);
+		Assertions.assertEquals(new File(filename).length(), info.fileSize);
+		Assertions.assertEquals(1, info.frames.size());
+		Assertions.assertEquals(5216, info.frameIndex.offset(0));
+
+		IrbImage image = info.frames.get(0);
+		Assertions.assertNull(image.pixels);
+		Assertions.assertEquals(expected.width, image.width);
+		Assertions.assertEquals(expected.height, image.height);
+		Assertions.assertEquals(expected.emissivity, image.emissivity);
+		Assertions.assertEquals(expected.calibRangeMin, image.calibRangeMin);
+		Assertions.assertEquals(expected.calibRangeMax, image.calibRangeMax);
+		Assertions.assertEquals(expected.deviceSerial, image.deviceSerial);
+		Assertions.assertEquals(expected.timestamp, image.timestamp);
+		Assertions.assertArrayEquals(expected.palette, image.palette);
+		Assertions.assertEquals(image.timestamp, info.image.timestamp);
+
+		Assertions.assertNull(IrbFileInfo.scan(filename, false).frames);
+	}
+
+	@Test
+	void testGenerator() throws IOException {
+		final int width = 37;
+		final int height = 23;
+		for (IrbFileType fileType : new IrbFileType[] { IrbFileType.IMAGE, IrbFileType.VARIOCAM, IrbFileType.O_SAVE_IRB }) {
+			for (int compressionType = 0; compressionType <= 2; ++compressionType) {
+				if (fileType == IrbFileType.O_SAVE_IRB && compressionType != 0) {
+					continue;
+				}
+				final int frameCount = (fileType == IrbFileType.IMAGE) ? 1 : 5;
+				IrbGenerator generator = new IrbGenerator(fileType, width, height, compressionType);
+				final String generated = generate(generator, frameCount);
+
+				try (IrbFile irbFile = IrbFile.open(generated)) {
+					Assertions.assertEquals(fileType, irbFile.fileType());
+					Assertions.assertEquals(frameCount, irbFile.getFrameCount());
+					for (int frameIdx = 0; frameIdx < frameCount; ++frameIdx) {
+						IrbImage frame = irbFile.getRawFrame(frameIdx);
+						Assertions.assertEquals(compressionType, frame.compression_type);
+						short[] raw = new short[width * height];
+						frame.rawPixels.get(raw);
+						Assertions.assertArrayEquals(generator.rawPixels(frameIdx), raw);
+
+						// decoding into temperatures yields the conversion of the raw pixels
+						IrbImage decoded = irbFile.getFrame(frameIdx);
+						frame.decodeRawPixels();
+						Assertions.assertArrayEquals(frame.pixels, decoded.pixels);
+					}
+				}
+
+				// eager reading sees the same frames
+				IrbFile eager = IrbFile.fromFile(generated);
+				if (fileType == IrbFileType.O_SAVE_IRB) {
+					Assertions.assertEquals(frameCount, eager.frames.stream().mapToInt(frame -> frame.images.size()).sum());
+				} else {
+					assertSameFrames(eager, generated);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testDeltaDecoder() {
+		// outliers need long codes
+		IrbGenerator generator = new IrbGenerator(IrbFileType.VARIOCAM, 101, 53, 2);
+		ByteBuffer image = generator.image(3);
+
+		IrbImage raw = IrbImage.fromBufferRaw(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit());
+		short[] expected = generator.rawPixels(3);
+		short[] decoded = new short[expected.length];
+		raw.rawPixels.get(decoded);
+		Assertions.assertArrayEquals(expected, decoded);
+
+		IrbImage kelvin = IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit(), false);
+		for (int i = 0; i < expected.length; ++i) {
+			Assertions.assertEquals((expected[i] & 0xFFFF) / 100.0F, kelvin.pixels[i]);
+		}
+
+		// truncated pixel data
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> IrbImage.fromBuffer(image.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, image.limit() - 64, false));
+
+		// the decoder agrees with the original bit-by-bit decoder on generated streams, including odd sizes ...
+		Random random = new Random(7);
+		for (int[] size : new int[][] { { 1, 1 }, { 2, 1 }, { 3, 3 }, { 17, 5 }, { 64, 48 }, { 101, 53 } }) {
+			for (long seed = 0; seed < 4; ++seed) {
+				byte[] stream = compressedPixels(new IrbGenerator(IrbFileType.VARIOCAM, size[0], size[1], 2).seed(seed), (int) seed);
+				final int numPixels = size[0] * size[1];
+				assertSameDeltaDecoding(stream, numPixels);
+
+				// ... on corrupted streams, which change both values and code lengths ...
+				for (int trial = 0; trial < 20; ++trial) {
+					byte[] corrupted = stream.clone();
+					for (int k = 0; k <= trial % 4; ++k) {
+						corrupted[random.nextInt(corrupted.length)] ^= (byte) (1 + random.nextInt(255));
+					}
+					assertSameDeltaDecoding(corrupted, numPixels);
+				}
+
+				// ... and on truncated ones, where both fail with an IllegalArgumentException
+				for (int length = 0; length < stream.length; length += 1 + stream.length / 50) {
+					assertSameDeltaDecoding(Arrays.copyOf(stream, length), numPixels);
+				}
+				assertSameDeltaDecoding(Arrays.copyOf(stream, stream.length - 1), numPixels);
+			}
+		}
+
+		// random bytes mostly consist of extended codes
+		for (int trial = 0; trial < 200; ++trial) {
+			byte[] stream = new byte[random.nextInt(300)];
+			random.nextBytes(stream);
+			assertSameDeltaDecoding(stream, 1 + random.nextInt(200));
+		}
+	}
+
+	/**
+	 * @param generator generator of images with compression type 2
+	 * @param frameIdx  index of the frame to generate
+	 * @return pixel data of the generated frame
+	 */
+	private static byte[] compressedPixels(IrbGenerator generator, int frameIdx) {
+		ByteBuffer image = generator.image(frameIdx);
+		byte[] stream = new byte[image.limit() - 1728];
+		image.position(1728);
+		image.get(stream);
+		return stream;
+	}
+
+	/**
+	 * Check that {@link IrbDeltaDecoder} decodes a stream as {@link IrbReferenceDeltaDecoder} does,
+	 * or fails with an IllegalArgumentException exactly when the latter does.
+	 *
+	 * @param stream    pixel data to decode
+	 * @param numPixels number of pixels to decode
+	 */
+	private static void assertSameDeltaDecoding(byte[] stream, int numPixels) {
+		short[] expected;
+		try {
+			expected = IrbReferenceDeltaDecoder.decode(stream, numPixels);
+		} catch (IllegalArgumentException e) {
+			expected = null;
+		}
+
+		// the stream is embedded in a larger buffer, which must not be read beyond the stream
+		ByteBuffer buf = ByteBuffer.allocate(stream.length + 13);
+		for (int i = 0; i < buf.capacity(); ++i) {
+			buf.put(i, (byte) 0xA5);
+		}
+		buf.position(5);
+		buf.put(stream);
+
+		short[] raw = new short[numPixels];
+		float[] pixels = new float[numPixels];
+		if (expected == null) {
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> IrbDeltaDecoder.decode(buf, 5, stream.length, numPixels, raw, null));
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> IrbDeltaDecoder.decode(buf, 5, stream.length, numPixels, null, pixels));
+		} else {
+			IrbDeltaDecoder.decode(buf, 5, stream.length, numPixels, raw, null);
+			Assertions.assertArrayEquals(expected, raw);
+			Assertions.assertEquals(5 + stream.length, buf.position());
+
+			IrbDeltaDecoder.decode(buf, 5, stream.length, numPixels, null, pixels);
+			for (int i = 0; i < numPixels; ++i) {
+				Assertions.assertEquals((expected[i] & 0xFFFF) / 100.0F, pixels[i]);
+			}
+		}
+	}
+
+	@Test
+	void testPixelTrace() throws IOException {
+		// uncompressed frames are read pixel by pixel, compressed frames are decoded as a whole
+		for (int compressionType : new int[] { 0, 2 }) {
+			final String generated = generate(new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, compressionType), 7);
+
+			try (IrbFile irbFile = IrbFile.open(generated)) {
+				IrbPixelTrace trace = irbFile.getPixelTrace(new int[] { 0, 1, 2, 63, 30 }, new int[] { 0, 0, 0, 47, 20 });
+				IrbPixelTrace region = irbFile.getRegionTrace(10, 20, 5, 3);
+				Assertions.assertEquals(7, trace.times.length);
+				Assertions.assertEquals(15, region.temperatures.length);
+
+				for (int frameIdx = 0; frameIdx < 7; ++frameIdx) {
+					IrbImage frame = irbFile.getFrame(frameIdx);
+					Assertions.assertEquals(frame.timestamp.getTime() + frame.timestampMillisecond, trace.times[frameIdx]);
+					for (int p = 0; p < trace.x.length; ++p) {
+						Assertions.assertEquals(frame.getPixel(trace.x[p], trace.y[p]), trace.temperatures[p][frameIdx]);
+					}
+					for (int p = 0; p < region.x.length; ++p) {
+						Assertions.assertEquals(frame.getPixel(10 + p % 5, 20 + p / 5), region.temperatures[p][frameIdx]);
+					}
+				}
+
+				Assertions.assertThrows(IndexOutOfBoundsException.class, () -> irbFile.getPixelTrace(new int[] { 64 }, new int[] { 0 }));
+			}
+		}
+	}
+
+	@Test
+	void testPixelStatistics() throws IOException {
+		for (int compressionType : new int[] { 0, 2 }) {
+			final String generated = generate(new IrbGenerator(IrbFileType.VARIOCAM, 32, 24, compressionType), 9);
+
+			try (IrbFile irbFile = IrbFile.open(generated)) {
+				// reference: all frames in memory, two passes
+				List<IrbImage> frames = irbFile.getFrames(1);
+				final int numPixels = 32 * 24;
+				double[] mean = new double[numPixels];
+				float[] min = new float[numPixels];
+				float[] max = new float[numPixels];
+				long[] maxTime = new long[numPixels];
+				Arrays.fill(min, Float.POSITIVE_INFINITY);
+				Arrays.fill(max, Float.NEGATIVE_INFINITY);
+				for (IrbImage frame : frames) {
+					for (int i = 0; i < numPixels; ++i) {
+						mean[i] += frame.pixels[i] / (double) frames.size();
+						min[i] = Math.min(min[i], frame.pixels[i]);
+						if (frame.pixels[i] > max[i]) {
+							max[i] = frame.pixels[i];
+							maxTime[i] = frame.timestamp.getTime() + frame.timestampMillisecond;
+						}
+					}
+				}
+				double[] variance = new double[numPixels];
+				for (IrbImage frame : frames) {
+					for (int i = 0; i < numPixels; ++i) {
+						variance[i] += (frame.pixels[i] - mean[i]) * (frame.pixels[i] - mean[i]) / frames.size();
+					}
+				}
+
+				// sequential, parallel and merged by hand
+				IrbPixelStatistics merged = irbFile.getPixelStatistics(0, 4).merge(irbFile.getPixelStatistics(4, 9));
+				for (IrbPixelStatistics statistics : Arrays.asList(irbFile.getPixelStatistics(1), irbFile.getPixelStatistics(4), merged)) {
+					Assertions.assertEquals(9, statistics.getCount());
+					final float[] statisticsMean = statistics.getMean();
+					final float[] statisticsStd = statistics.getStandardDeviation();
+					for (int i = 0; i < numPixels; ++i) {
+						Assertions.assertEquals(mean[i], statisticsMean[i], 1.0e-3);
+						Assertions.assertEquals(Math.sqrt(variance[i]), statisticsStd[i], 1.0e-3);
+					}
+					Assertions.assertArrayEquals(min, statistics.getMin());
+					Assertions.assertArrayEquals(max, statistics.getMax());
+					Assertions.assertArrayEquals(maxTime, statistics.getMaxTime());
+				}
+
+				Assertions.assertThrows(RuntimeException.class, () -> merged.merge(new IrbPixelStatistics(24, 32)));
+			}
+		}
+	}
+
+	@Test
+	void testHistogram() throws IOException {
+		final String generated = generate(new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, 1), 5);
+
+		try (IrbFile irbFile = IrbFile.open(generated)) {
+			// statistics and histograms in a single pass, reporting each frame once
+			IrbHistogram recording = new IrbHistogram(230.0F, 400.0F, 1700);
+			IrbHistogram[] histograms = new IrbHistogram[5];
+			IrbPixelStatistics statistics = irbFile.getPixelStatistics(2, recording, (histogram, frameIdx) -> {
+				Assertions.assertNull(histograms[frameIdx]);
+				histograms[frameIdx] = histogram;
+			});
+			Assertions.assertEquals(5, statistics.getCount());
+			Assertions.assertArrayEquals(irbFile.getPixelStatistics(1).getMax(), statistics.getMax());
+
+			IrbHistogram merged = new IrbHistogram(230.0F, 400.0F, 1700);
+			float[] all = new float[5 * 64 * 48];
+			for (int frameIdx = 0; frameIdx < 5; ++frameIdx) {
+				IrbImage frame = irbFile.getFrame(frameIdx);
+				IrbHistogram histogram = histograms[frameIdx];
+				Assertions.assertEquals(64 * 48, histogram.getCount());
+				Assertions.assertEquals(frame.minData, histogram.getMinValue());
+				Assertions.assertEquals(frame.maxData, histogram.getMaxValue());
+				Assertions.assertArrayEquals(new IrbHistogram(230.0F, 400.0F, 1700).add(frame).counts, histogram.counts);
+
+				merged.merge(histogram);
+				System.arraycopy(frame.pixels, 0, all, frameIdx * 64 * 48, 64 * 48);
+			}
+			Assertions.assertArrayEquals(merged.counts, recording.counts);
+			Assertions.assertEquals(merged.getMinValue(), recording.getMinValue());
+			Assertions.assertEquals(merged.getMaxValue(), recording.getMaxValue());
+
+			// without frame histograms, all frames are counted directly
+			IrbHistogram direct = new IrbHistogram(230.0F, 400.0F, 1700);
+			irbFile.getPixelStatistics(3, direct, null);
+			Assertions.assertArrayEquals(recording.counts, direct.counts);
+			Assertions.assertThrows(RuntimeException.class, () -> irbFile.getPixelStatistics(0, 5, null, (histogram, frameIdx) -> { }));
+
+			// exact percentiles are within one bin of the estimates
+			Arrays.sort(all);
+			for (double percent : new double[] { 1.0, 50.0, 99.0 }) {
+				final float exact = all[(int) Math.ceil(percent / 100.0 * all.length) - 1];
+				Assertions.assertEquals(exact, recording.percentile(percent), recording.binWidth);
+			}
+			Assertions.assertEquals(all[0], recording.percentile(0.0));
+			Assertions.assertEquals(all[all.length - 1], recording.percentile(100.0));
+		}
+
+		IrbHistogram histogram = new IrbHistogram(0.0F, 10.0F, 10).add(new float[] { -1.0F, 0.0F, 2.5F, 2.7F, 9.99F, 10.0F, 12.0F });
+		Assertions.assertEquals(1, histogram.getUnderflow());
+		Assertions.assertEquals(2, histogram.getOverflow());
+		Assertions.assertArrayEquals(new long[] { 1, 0, 2, 0, 0, 0, 0, 0, 0, 1 }, histogram.counts);
+		Assertions.assertTrue(Float.isNaN(new IrbHistogram(0.0F, 10.0F, 10).percentile(50.0)));
+		Assertions.assertThrows(RuntimeException.class, () -> histogram.merge(new IrbHistogram(0.0F, 10.0F, 20)));
+
+		// NaN is neither counted nor spread into the range by merging
+		IrbHistogram withNaN = new IrbHistogram(0.0F, 10.0F, 10).add(new float[] { Float.NaN, 5.0F, Float.NaN });
+		Assertions.assertEquals(1, withNaN.getCount());
+		Assertions.assertEquals(0, withNaN.getOverflow());
+		Assertions.assertEquals(5.0F, withNaN.getMinValue());
+		Assertions.assertEquals(5.0F, withNaN.getMaxValue());
+		IrbHistogram onlyNaN = new IrbHistogram(histogram);
+		onlyNaN.add(Float.NaN);
+		Assertions.assertEquals(0, onlyNaN.getCount());
+		histogram.merge(withNaN).merge(onlyNaN);
+		Assertions.assertEquals(8, histogram.getCount());
+		Assertions.assertEquals(-1.0F, histogram.getMinValue());
+		Assertions.assertEquals(12.0F, histogram.getMaxValue());
+		Assertions.assertEquals(5.0F, withNaN.percentile(50.0));
+	}
+
+	@Test
+	void testFusedDecode() throws IOException {
+		File kelvinOutput = new File(tempDir, "kelvin.dat");
+		File fusedOutput = new File(tempDir, "fused.dat");
+		for (int compressionType = 0; compressionType <= 2; ++compressionType) {
+			ByteBuffer buf = new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, compressionType).image(1);
+			IrbImage kelvin = IrbImage.fromBuffer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), false);
+			IrbHistogram histogram = new IrbHistogram(230.0F, 400.0F, 1700);
+			float[] celsiusPixels = new float[64 * 48];
+			IrbImage fused = IrbImage.fromBuffer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), celsiusPixels, histogram);
+
+			// pixels stay in Kelvin; deg. Celsius are written in the same pass
+			Assertions.assertArrayEquals(kelvin.pixels, fused.pixels);
+			Assertions.assertArrayEquals(kelvin.getCelsiusPixels(), celsiusPixels);
+			Assertions.assertArrayEquals(kelvin.getCelsiusImage(), fused.getCelsiusImage());
+			Assertions.assertEquals(kelvin.getPixel(5, 7), fused.getPixel(5, 7));
+
+			Assertions.assertEquals(kelvin.minData, fused.minData);
+			Assertions.assertEquals(kelvin.maxData, fused.maxData);
+			Assertions.assertEquals(kelvin.meanData, fused.meanData);
+			double sum = 0.0;
+			for (float v : kelvin.pixels) {
+				sum += v;
+			}
+			Assertions.assertEquals(sum / kelvin.pixels.length, kelvin.meanData, 1.0e-3);
+			Assertions.assertArrayEquals(new IrbHistogram(230.0F, 400.0F, 1700).add(kelvin).counts, histogram.counts);
+
+			kelvin.exportImageData(kelvinOutput.getPath());
+			fused.exportImageData(fusedOutput.getPath());
+			Assertions.assertArrayEquals(Files.readAllBytes(kelvinOutput.toPath()), Files.readAllBytes(fusedOutput.toPath()));
+
+			// the metadata keeps its keys
+			File metadataOutput = new File(tempDir, "fused.json");
+			fused.writeMetaData(metadataOutput.getPath());
+			final String json = new String(Files.readAllBytes(metadataOutput.toPath()), StandardCharsets.UTF_8);
+			Assertions.assertTrue(json.contains("\"maxData\""));
+			Assertions.assertFalse(json.contains("meanData"));
+
+			Assertions.assertThrows(RuntimeException.class, () -> IrbImage.fromBuffer(
+					buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), new float[64 * 48 - 1], null));
+
+			try (IrbFile irbFile = IrbFile.open(generate(new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, compressionType), 3))) {
+				for (int frameIdx = 0; frameIdx < 3; ++frameIdx) {
+					IrbImage metadata = irbFile.getFrameMetadata(frameIdx);
+					Assertions.assertNull(metadata.pixels);
+					float[] frameCelsius = new float[metadata.width * metadata.height];
+					IrbImage frame = irbFile.getFrame(frameIdx, frameCelsius, null);
+					Assertions.assertArrayEquals(irbFile.getFrame(frameIdx).pixels, frame.pixels);
+					Assertions.assertArrayEquals(frame.getCelsiusPixels(), frameCelsius);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testRegions() {
+		List<IrbRegion> regions = new ArrayList<>();
+		regions.add(new IrbRegion(10, 5, 7, 4));
+		regions.add(new IrbRegion(0, 0, 1, 1));
+		regions.add(new IrbRegion(60, 30, 4, 3));
+		regions.add(new IrbRegion(12, 6, 2, 2));
+
+		for (int compressionType = 0; compressionType <= 2; ++compressionType) {
+			ByteBuffer buf = new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, compressionType).image(0);
+			IrbImage image = IrbImage.fromBuffer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), false);
+			List<IrbRegion> decoded = IrbRegion.fromBuffer(buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), regions);
+
+			Assertions.assertEquals(regions.size(), decoded.size());
+			for (IrbRegion region : decoded) {
+				float min = Float.POSITIVE_INFINITY;
+				float max = Float.NEGATIVE_INFINITY;
+				double sum = 0.0;
+				for (int j = 0; j < region.height; ++j) {
+					for (int i = 0; i < region.width; ++i) {
+						final float expected = image.getPixel(region.x0 + i, region.y0 + j);
+						Assertions.assertEquals(expected, region.pixels[j * region.width + i]);
+						min = Math.min(min, expected);
+						max = Math.max(max, expected);
+						sum += expected;
+					}
+				}
+				Assertions.assertEquals(min, region.minData);
+				Assertions.assertEquals(max, region.maxData);
+				Assertions.assertEquals(sum / region.pixels.length, region.meanData, 1.0e-3);
+			}
+
+			Assertions.assertThrows(IndexOutOfBoundsException.class, () -> IrbRegion.fromBuffer(
+					buf.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, buf.limit(), Arrays.asList(new IrbRegion(60, 0, 5, 1))));
+		}
+	}
+
+	@Test
+	void testMappedFileWindows() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		final byte[] contents = Files.readAllBytes(Paths.get(filename));
+
+		// small windows: image data spans many windows
+		try (IrbMappedFile file = new IrbMappedFile(filename, 4096, 2)) {
+			Assertions.assertEquals(contents.length, file.size());
+			Assertions.assertThrows(RuntimeException.class, () -> file.slice(100, 1000));
+
+			final long token = file.acquire();
+			try {
+				// within a single window and across a window boundary
+				List<ByteBuffer> slices = new ArrayList<>();
+				for (long offset : new long[] { 100, 4000, 5216 }) {
+					ByteBuffer slice = file.slice(offset, 1000);
+					Assertions.assertEquals(1000, slice.remaining());
+					for (int i = 0; i < 1000; ++i) {
+						Assertions.assertEquals(contents[(int) offset + i], slice.get(i));
+					}
+					slices.add(slice);
+				}
+
+				// evicted windows are not unmapped while the reader is active
+				for (long offset = 8192; offset + 1000 < contents.length; offset += 4096) {
+					file.slice(offset, 1000);
+				}
+				for (int i = 0; i < 1000; ++i) {
+					Assertions.assertEquals(contents[100 + i], slices.get(0).get(i));
+				}
+
+				Assertions.assertThrows(IndexOutOfBoundsException.class, () -> file.slice(contents.length - 10, 20));
+			} finally {
+				file.release(token);
+			}
+
+			// closing while a reader is active stops it from reading further
+			final long active = file.acquire();
+			file.close();
+			Assertions.assertThrows(RuntimeException.class, () -> file.slice(100, 1000));
+			file.release(active);
+			Assertions.assertThrows(RuntimeException.class, () -> file.acquire());
+		}
+
+		IrbImage expected = IrbFile.fromFile(filename).images.get(0);
+		try (IrbFile irbFile = IrbFile.open(filename, 4096)) {
+			Assertions.assertArrayEquals(expected.pixels, irbFile.getFrame(0).pixels);
+		}
+
+		// truncated files fail to open without leaking their file handle
+		File truncated = new File(tempDir, "truncated.irb");
+		Files.write(truncated.toPath(), Arrays.copyOf(contents, 3000));
+		File fileDescriptors = new File("/proc/self/fd");
+		final int openFiles = fileDescriptors.isDirectory() ? fileDescriptors.list().length : 0;
+		for (int i = 0; i < 100; ++i) {
+			Assertions.assertThrows(RuntimeException.class, () -> IrbFile.open(truncated.getPath()));
+		}
+		if (fileDescriptors.isDirectory()) {
+			Assertions.assertTrue(fileDescriptors.list().length < openFiles + 10, "file handles leaked");
+		}
+		Assertions.assertTrue(truncated.delete());
+	}
+
+	@Test
+	void testConcurrentReaders() throws Exception {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		IrbImage expected = IrbFile.fromFile(filename).images.get(0);
+
+		// small windows: threads keep evicting each other's windows
+		IrbFile irbFile = IrbFile.open(filename, 4096);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<IrbImage>> frames = new ArrayList<>();
+			for (int i = 0; i < 32; ++i) {
+				frames.add(executor.submit(() -> irbFile.getFrame(0)));
+			}
+			for (Future<IrbImage> frame : frames) {
+				Assertions.assertArrayEquals(expected.pixels, frame.get().pixels);
+			}
+		} finally {
+			executor.shutdown();
+			irbFile.close();
+		}
+	}
+
+	@Test
+	void testPaletteTable() {
+		float[] palette = new float[256];
+		for (int i = 0; i < 256; ++i) {
+			palette[i] = 250.0F + 0.5F * i;
+		}
+
+		IrbPaletteTable paletteTable = IrbPaletteTable.of(palette);
+
+		// cached by palette contents
+		Assertions.assertSame(paletteTable, IrbPaletteTable.of(palette.clone()));
+
+		for (int v2 = 0; v2 < 255; ++v2) {
+			for (int v1 = 0; v1 < 256; ++v1) {
+				float f = v1 / 256.0F;
+				float expected = palette[v2 + 1] * f + palette[v2] * (1.0F - f);
+				Assertions.assertEquals(expected, paletteTable.get((v2 << 8) | v1));
+			}
+		}
+	}
+
+	@Test
+	void testRawPixels() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		final IrbFile closed;
+		final IrbImage decoded;
+		final List<IrbImage> rawFrames;
+		try (IrbFile irbFile = IrbFile.open(filename)) {
+			decoded = irbFile.getFrame(0);
+			IrbImage raw = irbFile.getRawFrame(0);
+
+			Assertions.assertNull(raw.pixels);
+			Assertions.assertEquals(640 * 480, raw.rawPixels.capacity());
+			Assertions.assertEquals(decoded.minData, raw.minData);
+			Assertions.assertEquals(decoded.maxData, raw.maxData);
+			Assertions.assertEquals(decoded.getPixel(17, 479), raw.getPixel(17, 479));
+			Assertions.assertArrayEquals(decoded.getCelsiusPixels(), raw.getCelsiusPixels());
+
+			raw.decodeRawPixels();
+			Assertions.assertArrayEquals(decoded.pixels, raw.pixels);
+
+			// the palette table is resolved once per image, and again when re-calibrating with a modified palette
+			Assertions.assertSame(raw.paletteTable(), raw.paletteTable());
+			final float[] palette = raw.palette.clone();
+			for (int i = 0; i < palette.length; ++i) {
+				raw.palette[i] += 10.0F;
+			}
+			raw.decodeRawPixels();
+			Assertions.assertEquals(decoded.getPixel(17, 479) + 10.0F, raw.getPixel(17, 479), 1.0e-3F);
+			Assertions.assertEquals(decoded.pixels[1234] + 10.0F, raw.pixels[1234], 1.0e-3F);
+			System.arraycopy(palette, 0, raw.palette, 0, palette.length);
+			raw.decodeRawPixels();
+			Assertions.assertEquals(decoded.getPixel(17, 479), raw.getPixel(17, 479));
+
+			// raw pixels are copied out of the mapping, so they are not affected by closing the file
+			rawFrames = irbFile.rawFrameStream(false).collect(Collectors.toList());
+			closed = irbFile;
+		}
+		Assertions.assertThrows(RuntimeException.class, () -> closed.getRawFrame(0));
+		Assertions.assertThrows(RuntimeException.class, () -> closed.getPixelStatistics(0, 1));
+		Assertions.assertEquals(1, rawFrames.size());
+		IrbImage copy = rawFrames.get(0);
+		Assertions.assertFalse(copy.rawPixels.isDirect());
+		copy.decodeRawPixels();
+		Assertions.assertArrayEquals(decoded.pixels, copy.pixels);
+
+		// images read from a buffer keep viewing it until detached
+		ByteBuffer buf = new IrbGenerator(IrbFileType.VARIOCAM, 64, 48, 0).image(0);
+		ByteBuffer direct = ByteBuffer.allocateDirect(buf.limit()).put(buf);
+		IrbImage view = IrbImage.fromBufferRaw(direct.order(ByteOrder.LITTLE_ENDIAN), 0, direct.limit());
+		Assertions.assertTrue(view.rawPixels.isDirect());
+		final float pixel = view.getPixel(3, 4);
+		Assertions.assertSame(view, view.detach());
+		Assertions.assertFalse(view.rawPixels.isDirect());
+		for (int i = 0; i < direct.limit(); ++i) {
+			direct.put(i, (byte) 0);
+		}
+		Assertions.assertEquals(pixel, view.getPixel(3, 4));
+	}
+
+	@Test
+	void testDiagnostics() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		IrbDiagnosticsCounter counter = new IrbDiagnosticsCounter();
+		IrbDiagnostics.setListener(counter);
+		try {
+			IrbFile.fromFile(filename);
+		} finally {
+			IrbDiagnostics.setListener(null);
+		}
+
+		// file size, file header, header blocks, image header and data range
+		Assertions.assertTrue(counter.getInfoCount() > 0);
+		Assertions.assertEquals(counter.getWarningCount(),
+				counter.getWarningCounts().values().stream().mapToLong(Long::longValue).sum());
+
+		counter.reset();
+		Assertions.assertEquals(0, counter.getInfoCount());
+		Assertions.assertEquals(0, counter.getWarningCount());
+		Assertions.assertSame(IrbDiagnosticsListener.NONE, IrbDiagnostics.getListener());
+	}
+
+	@Test
+	void testTextWriter() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		final String filename = folder + "140114AA/AA011400.irb";
+
+		// values near rounding ties, signed zeros, non-finite and large values
+		float[] values = { 0.0F, -0.0F, 1.0e-9F, -1.0e-9F, 0.0000005F, -0.0000005F, 1.2345675F, 25.000000476837158F,
+				999999.94F, 1.0e6F, -1.0e7F, Float.MAX_VALUE, Float.MIN_VALUE, Float.NaN, Float.NEGATIVE_INFINITY };
+		Random random = new Random(42);
+		final byte[] formatted = new byte[64];
+		for (int i = 0; i < values.length + 100000; ++i) {
+			final float value = (i < values.length) ? values[i] : (random.nextFloat() - 0.1F) * 3000.0F;
+			final int length = IrbTextWriter.format(value, formatted, 0);
+			Assertions.assertEquals(String.format(Locale.ENGLISH, "%8.6f", value), new String(formatted, 0, length, StandardCharsets.US_ASCII));
+		}
+
+		// whole image, as previously written by exportImageData
+		IrbImage image = IrbFile.fromFile(filename).images.get(0);
+		StringBuilder expected = new StringBuilder();
+		for (int y = image.height - 1; y >= 0; y--) {
+			for (int x = 0; x < image.width; ++x) {
+				expected.append(String.format(Locale.ENGLISH, "%8.6f ", image.pixels[y * image.width + x] - IrbImage.CELSIUS_OFFSET));
+			}
+			expected.append("\n");
+		}
+
+		File exported = new File(tempDir, "image.dat");
+		image.exportImageData(exported.getAbsolutePath());
+		Assertions.assertEquals(expected.toString(), new String(Files.readAllBytes(exported.toPath()), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void testColormap() throws IOException {
+		final String folder = new File(DemoIrb.class.getClassLoader().getResource("de/labathome/irb").getFile()).getAbsolutePath() + "/";
+		IrbImage snapshot = IrbFile.fromFile(folder + "140114AA/AA011400.irb").images.get(0);
+
+		// a real image and a fine gradient over the whole colormap
+		float[] gradient = new float[1000];
+		for (int i = 0; i < gradient.length; ++i) {
+			gradient[i] = -20.0F + 0.07F * i;
+		}
+		List<float[]> images = Arrays.asList(snapshot.getCelsiusPixels(), gradient);
+		List<int[]> sizes = Arrays.asList(new int[] { snapshot.width, snapshot.height }, new int[] { 40, 25 });
+
+		for (int k = 0; k < images.size(); ++k) {
+			final float[] pixels = images.get(k);
+			final int width = sizes.get(k)[0];
+			final int height = sizes.get(k)[1];
+			for (boolean interpolated : new boolean[] { true, false }) {
+				BufferedImage expected = ReferenceArrayToPNG.array2Image(pixels, width, height, ArrayToPNG.COLORMAP1, interpolated);
+				BufferedImage actual = ArrayToPNG.array2Image(pixels, width, height, null, null, interpolated);
+
+				// the color table is within one step of the interpolated colormap in each channel
+				for (int y = 0; y < height; ++y) {
+					for (int x = 0; x < width; ++x) {
+						final int expectedColor = expected.getRGB(x, y);
+						final int actualColor = actual.getRGB(x, y);
+						for (int shift = 0; shift < 32; shift += 8) {
+							final int deviation = Math.abs(((expectedColor >> shift) & 0xFF) - ((actualColor >> shift) & 0xFF));
+							Assertions.assertTrue(deviation <= 1, (interpolated ? "interpolated" : "nearest") + " color at (" + x + ", " + y + ")");
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testPngEncoder() throws IOException {
+		final int width = 37;
+		final int height = 23;
+		Random random = new Random(42);
+		int[] argb = new int[width * height];
+		byte[] indices = new byte[width * height];
+		short[] values = new short[width * height];
+		for (int i = 0; i < width * height; ++i) {
+			argb[i] = 0xFF000000 | ((i * 7) << 16) | (random.nextInt(256) << 8) | (i & 0xFF);
+			indices[i] = (byte) random.nextInt(4);
+			values[i] = (short) (30000 + 37 * i);
+		}
+		int[] palette = { 0x000000, 0xFF0000, 0x00FF00, 0x0000FF };
+
+		for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+			PngEncoder encoder = new PngEncoder(6, filter);
+
+			// opaque RGB and RGBA with some transparent pixels
+			for (int alpha : new int[] { 0xFF, 0x80 }) {
+				argb[width + 3] = (alpha << 24) | (argb[width + 3] & 0xFFFFFF);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				encoder.writeArgb(argb, width, height, out);
+				BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+				Assertions.assertArrayEquals(argb, image.getRGB(0, 0, width, height, null, 0, width));
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encoder.writeIndexed(indices, width, height, palette, out);
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+			for (int i = 0; i < width * height; ++i) {
+				Assertions.assertEquals(0xFF000000 | palette[indices[i]], image.getRGB(i % width, i / width));
+			}
+
+			out = new ByteArrayOutputStream();
+			encoder.writeGray16(values, width, height, out);
+			image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+			short[] decoded = new short[width * height];
+			image.getRaster().getDataElements(0, 0, width, height, decoded);
+			Assertions.assertArrayEquals(values, decoded);
+
+			// the next filter starts with a new Deflater
+			PngEncoder.end();
+		}
+		PngEncoder.end();
+	}
 }
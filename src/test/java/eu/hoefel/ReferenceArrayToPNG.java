@@ -0,0 +1,66 @@
+package eu.hoefel;
+
+import java.awt.image.BufferedImage;
+
+import org.apache.commons.math3.analysis.interpolation.LinearInterpolator;
+import org.apache.commons.math3.analysis.polynomials.PolynomialSplineFunction;
+
+/**
+ * The original conversion of an array into an image, which evaluates a linear spline per color channel for every pixel.
+ * It is only kept as a reference for {@link ArrayToPNG#array2Image(float[], int, int, double[][], double[][], boolean)}.
+ */
+public final class ReferenceArrayToPNG {
+
+	private ReferenceArrayToPNG() { }
+
+	/**
+	 * Creates an opaque image from a flat array.
+	 *
+	 * @param a The array; [height * width], row-major
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param colormap [3][m] values in the range [0,1]. colormap[0][i] is red, colormap[1][i] green, colormap[2][i] blue.
+	 * @param interpolatedColors true: interpolate colormap linearly; false: find nearest color
+	 * @return A BufferedImage object
+	 */
+	public static BufferedImage array2Image(float[] a, int width, int height, double[][] colormap, boolean interpolatedColors) {
+		double maxval = a[0];
+		double minval = a[0];
+		for (int i = 0; i < a.length; ++i) {
+			maxval = Math.max(maxval, a[i]);
+			minval = Math.min(minval, a[i]);
+		}
+
+		final double[] rescaledRange = new double[colormap[0].length];
+		for (int i = 0; i < rescaledRange.length; ++i) {
+			rescaledRange[i] = minval + i * (maxval - minval) / (rescaledRange.length - 1.0);
+		}
+
+		LinearInterpolator linearInterpolator = new LinearInterpolator();
+		PolynomialSplineFunction rmap = linearInterpolator.interpolate(rescaledRange, colormap[0]);
+		PolynomialSplineFunction gmap = linearInterpolator.interpolate(rescaledRange, colormap[1]);
+		PolynomialSplineFunction bmap = linearInterpolator.interpolate(rescaledRange, colormap[2]);
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
+				// clamp to the knots, which rounding may place just inside the range of the data
+				final double val = Math.max(rescaledRange[0], Math.min(rescaledRange[rescaledRange.length - 1], a[i * width + j]));
+				int r, g, b;
+				if (interpolatedColors) {
+					r = (int) (rmap.value(val) * 255);
+					g = (int) (gmap.value(val) * 255);
+					b = (int) (bmap.value(val) * 255);
+				} else {
+					int index = (int) Math.round(Math.abs((val - minval) / (maxval - minval) * (colormap[0].length - 1)));
+					index = Math.min(index, colormap[0].length - 1);
+					r = (int) (colormap[0][index] * 255);
+					g = (int) (colormap[1][index] * 255);
+					b = (int) (colormap[2][index] * 255);
+				}
+				image.setRGB(j, i, (255 << 24) | (r << 16) | (g << 8) | b);
+			}
+		}
+		return image;
+	}
+}